@@ -10,8 +10,78 @@
  *
  **/
 
+import java.io.IOException;
+import java.io.PrintStream;
+
 public abstract class AbstractGenerate
 {
+    /** Where events are sent; events are buffered, so call flush() when done. */
+    protected EventSink sink;
+
+    /** The number of nonterminals commenced, for CompileMetrics. */
+    int nonterminalCount;
+
+    /** The number of terminals inserted. */
+    int terminalCount;
+
+    /** The name of the source, for flight recorder events. */
+    String sourceName;
+
+    /** The flight recorder events of the nonterminals commenced and not yet finished, innermost last. */
+    private CompileEvents.NonterminalParsed[] openNonterminals;
+    private int openCount;
+
+    /**
+    *
+    * setOutput, to send events as text somewhere other than System.out
+    *
+    **/
+
+    public void setOutput( PrintStream out ) {
+        sink = new TextEventSink( out );
+    } // end of method setOutput
+
+    /**
+    *
+    * setSink, to send events to any sink
+    *
+    **/
+
+    public void setSink( EventSink sink ) {
+        this.sink = sink;
+    } // end of method setSink
+
+    /**
+    *
+    * sink, as text on System.out unless another has been set
+    *
+    **/
+
+    protected EventSink sink() {
+        if( sink == null )
+            sink = new TextEventSink( System.out );
+        return sink;
+    } // end of method sink
+
+    /**
+    *
+    * flush, to write out every event so far
+    *
+    **/
+
+    public void flush() throws IOException {
+        if( sink == null )
+            return;
+        CompileEvents.OutputFlush event = new CompileEvents.OutputFlush();
+        event.begin();
+        sink.flush();
+        if( event.shouldCommit() ) {
+            event.fileName = sourceName;
+            event.tokens = terminalCount;
+            event.nonterminals = nonterminalCount;
+            event.commit();
+        }
+    } // end of method flush
 
     /**
     *
@@ -20,14 +90,20 @@ public abstract class AbstractGenerate
     **/
 
     public void insertTerminal( Token token ) {
-        String tt = Token.getName( token.symbol );
-        
-        if( (token.symbol == Token.identifier) || (token.symbol == Token.numberConstant) || (token.symbol == Token.stringConstant) )
-            tt += " '" + token.text + "'";
+        insertTerminal( token.symbol, token.text, token.lineNumber );
+    } // end of method insertTerminal
 
-        tt += " on line " + token.lineNumber;
+    /**
+    *
+    * insertTerminal, for a token known only by its parts, as from the
+    * LexicalAnalyser cursor.  The text may be a view that changes once the
+    * analyser advances, so it must not be kept.
+    *
+    **/
 
-        System.out.println( "rggTOKEN " + tt );
+    public void insertTerminal( int symbol, CharSequence text, int lineNumber ) {
+        terminalCount++;
+        sink().insertTerminal( symbol, text, lineNumber );
     } // end of method insertTerminal
 
     /**
@@ -37,7 +113,10 @@ public abstract class AbstractGenerate
     **/
 
     public void commenceNonterminal( String name ) {
-        System.out.println( "rggBEGIN " + name );
+        nonterminalCount++;
+        if( CompileEvents.nonterminalsEnabled() )
+            beginNonterminalEvent( name );
+        sink().commenceNonterminal( name );
     } // end of method commenceNonterminal
 
     /**
@@ -47,9 +126,81 @@ public abstract class AbstractGenerate
     **/
 
     public void finishNonterminal( String name ) {
-        System.out.println( "rggEND " + name );
+        if( openCount > 0 )
+            endNonterminalEvent( name );
+        sink().finishNonterminal( name );
     } // end of method finishNonterminal
 
+    /**
+    *
+    * beginNonterminalEvent, to time a nonterminal for the flight recorder
+    *
+    **/
+
+    private void beginNonterminalEvent( String name ) {
+        if( openNonterminals == null )
+            openNonterminals = new CompileEvents.NonterminalParsed[16];
+        else if( openCount == openNonterminals.length )
+            openNonterminals = java.util.Arrays.copyOf( openNonterminals, openCount * 2 );
+        CompileEvents.NonterminalParsed event = new CompileEvents.NonterminalParsed();
+        event.fileName = sourceName;
+        event.nonterminal = name;
+        event.depth = openCount;
+        event.tokens = terminalCount;
+        event.begin();
+        openNonterminals[openCount++] = event;
+    } // end of method beginNonterminalEvent
+
+    /**
+    *
+    * endNonterminalEvent, to commit the event of the innermost open
+    * nonterminal with this name, and of any inside it that an error kept
+    * from being finished.  A nonterminal commenced while the events were off
+    * has none, and is left alone.
+    *
+    **/
+
+    private void endNonterminalEvent( String name ) {
+        int i = openCount - 1;
+        while( (i >= 0) && !openNonterminals[i].nonterminal.equals( name ) )
+            i--;
+        if( i >= 0 )
+            commitNonterminalEvents( i, openCount - 1 - i );
+    } // end of method endNonterminalEvent
+
+    /**
+    *
+    * abandonNonterminals, to commit the events of every nonterminal still
+    * open when a parse ends, as not completed
+    *
+    **/
+
+    void abandonNonterminals() {
+        if( openCount > 0 )
+            commitNonterminalEvents( 0, openCount );
+    } // end of method abandonNonterminals
+
+    /**
+    *
+    * commitNonterminalEvents, for the open nonterminals from index from on,
+    * the innermost first; all but the given number of them were completed
+    *
+    **/
+
+    private void commitNonterminalEvents( int from, int abandoned ) {
+        for( int i = openCount - 1; i >= from; i-- ) {
+            CompileEvents.NonterminalParsed event = openNonterminals[i];
+            openNonterminals[i] = null;
+            event.end();
+            if( event.shouldCommit() ) {
+                event.tokens = terminalCount - event.tokens;
+                event.completed = (i < openCount - abandoned);
+                event.commit();
+            }
+        }
+        openCount = from;
+    } // end of method commitNonterminalEvents
+
     /**
     *
     * reportSuccess
@@ -58,11 +209,24 @@ public abstract class AbstractGenerate
 
     public void reportSuccess()
     {
-        System.out.println( "rggSUCCESS" );
+        sink().reportSuccess();
     } // end of method reportSuccess
 
 
     /** Report an error to the user. */
     public abstract void reportError( Token token, String explanatoryMessage ) throws CompilationException;
 
+    /**
+    *
+    * reportError, for a structured diagnostic.  The cause is the error being
+    * handled when this one was found, if any.  Generators that only know the
+    * textual form get the formatted message.
+    *
+    **/
+
+    public void reportError( Diagnostic diagnostic, CompilationException cause ) throws CompilationException {
+        Token token = new Token( diagnostic.symbol, diagnostic.text, diagnostic.lineNumber );
+        reportError( token, diagnostic.getMessage() );
+    } // end of method reportError
+
 } // end of class "AbstractGenerate"
@@ -11,6 +11,8 @@
  **/
 
 import java.io.* ;
+import java.util.ArrayList ;
+import java.util.List ;
 
 public abstract class AbstractSyntaxAnalyser
 {
@@ -20,6 +22,39 @@ public abstract class AbstractSyntaxAnalyser
 	Token nextToken ;
 	/** A code generator, descendant of AbstractGenerate. */
 	Generate myGenerate = null;
+	/** Where the generator sends its events, if not to a text sink made for each parse. */
+	EventSink eventSink = null;
+	/** A tree to build from each parse as well as sending events, or null. */
+	SyntaxTree syntaxTree = null;
+	/** Read tokens through the lexer's cursor into one reused Token, rather than a new Token each time. */
+	boolean cursorMode = false;
+	/** The Token reused for every token in cursor mode. */
+	private final Token cursorToken = new Token(Token.eofSymbol, "", 0) ;
+	/** An already tokenised source to parse instead of reading from lex, or null. */
+	TokenBuffer tokens ;
+	/** The index in tokens of nextToken. */
+	int tokenIndex = -1 ;
+	/** The number of tokens read so far in this parse. */
+	int tokensRead ;
+	/** The name of the source, for flight recorder events. */
+	String sourceName ;
+	/** The flight recorder event timing the tokens being read, or null. */
+	private CompileEvents.TokenBatch tokenBatch ;
+	/** Lex on a thread of its own, ahead of the parser, rather than token by token as the parser asks. */
+	boolean pipelined = false;
+	/** The tokens lexed ahead in a pipelined parse, or null. */
+	TokenRing ring ;
+
+	/** The most errors to collect before giving up, or 0 to stop at the first. */
+	int errorLimit = 0 ;
+	/** The errors collected in this parse, when recovering from errors. */
+	private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>() ;
+	/** The value of tokensRead when the last error was collected. */
+	private int tokensAtLastError = -1 ;
+	/** The number of errors reported by the last parse. */
+	private int errorsReported ;
+	/** How long the last parse took to write out its events at the end, in nanoseconds. */
+	private long outputNanos ;
 
 	/** Begin processing the first (top level) token.*/
 	public abstract void _statementPart_() throws IOException, CompilationException;
@@ -27,6 +62,270 @@ public abstract class AbstractSyntaxAnalyser
 	/** Accept a token based on context.  Requires implementation. */
 	public abstract void acceptTerminal(int symbol) throws IOException, CompilationException;
 
+	/** Makes each parse build a syntax tree as well as sending its events.
+		The tree is reset at the start of each parse, so one tree can be
+		reused for file after file.
+
+	  @param tree The tree to build, or null to build none.
+	*/
+	public void setSyntaxTree( SyntaxTree tree )
+	{
+		syntaxTree = tree ;
+	} // end of method setSyntaxTree
+
+	/** Chooses whether the parser recovers from syntax errors and carries on,
+		so that one pass finds every error in a file.  The parser skips ahead
+		to a token that can follow a statement (; end loop until else) and goes
+		on from there.  The events for a file with errors are then incomplete.
+
+	  @param maxErrors The most errors to collect before giving up, or 0 to stop at the first error.
+	*/
+	public void setErrorRecovery( int maxErrors )
+	{
+		errorLimit = maxErrors ;
+	} // end of method setErrorRecovery
+
+	/** @return true if the parser recovers from errors rather than stopping at the first. */
+	boolean recovering()
+	{
+		return errorLimit > 0 ;
+	} // end of method recovering
+
+	/** @return true once as many errors have been collected as are allowed. */
+	boolean errorLimitReached()
+	{
+		return diagnostics.size() >= errorLimit ;
+	} // end of method errorLimitReached
+
+	/** @return the errors collected in the last parse, when recovering from errors. */
+	public List<Diagnostic> getDiagnostics()
+	{
+		return diagnostics ;
+	} // end of method getDiagnostics
+
+	/** Collects an error and skips ahead to a token that can follow a
+		statement.  An error found before any more tokens have been read is
+		taken to be a knock-on effect of the last one and is not collected.
+		Once the error limit is reached nothing more is recovered from, so an
+		enclosing statement catching the error passes it straight on.
+
+	  @param e The exception reporting the error, or null.
+	  @param d The error to collect if e does not carry one.
+	  @throws IOException in the event that the file cannot be read.
+	  @throws CompilationException once the error limit is reached.
+	*/
+	void recover( CompilationException e, Diagnostic d ) throws IOException, CompilationException
+	{
+		if (errorLimitReached())
+			throw (e != null) ? e : new DiagnosticException( d ) ;
+		Diagnostic root = rootDiagnostic( e ) ;
+		if (root != null)
+			d = root ;
+		if (tokensRead != tokensAtLastError)
+		{
+			diagnostics.add( d ) ;
+			tokensAtLastError = tokensRead ;
+			if (diagnostics.size() >= errorLimit)
+				throw new DiagnosticException( d ) ;
+		}
+
+		while ((nextToken.symbol != Token.semicolonSymbol) && (nextToken.symbol != Token.endSymbol) &&
+				(nextToken.symbol != Token.loopSymbol) && (nextToken.symbol != Token.untilSymbol) &&
+				(nextToken.symbol != Token.elseSymbol) && (nextToken.symbol != Token.eofSymbol))
+			readNextToken() ;
+	} // end of method recover
+
+	/** Finds the error at the bottom of a chain of exceptions, which is where
+		the parser first went wrong.
+
+	  @param e The exception, or null.
+	  @return the innermost diagnostic in the chain, or null if there is none.
+	*/
+	private static Diagnostic rootDiagnostic( Throwable e )
+	{
+		Diagnostic root = null ;
+		for ( ; e != null ; e = e.getCause())
+			if (e instanceof DiagnosticException)
+				root = ((DiagnosticException) e).getDiagnostic() ;
+		return root ;
+	} // end of method rootDiagnostic
+
+	/** @return the number of tokens lexed for the last parse: all of them
+		when parsing a TokenBuffer, or else those the parser read. */
+	public int tokensLexed()
+	{
+		return (tokens != null) ? tokens.size() : tokensRead ;
+	} // end of method tokensLexed
+
+	/** @return the number of nonterminals the last parse entered. */
+	public int nonterminalsEntered()
+	{
+		return (myGenerate != null) ? myGenerate.nonterminalCount : 0 ;
+	} // end of method nonterminalsEntered
+
+	/** @return the number of errors the last parse reported. */
+	public int errorsReported()
+	{
+		return errorsReported ;
+	} // end of method errorsReported
+
+	/** @return how long the last parse took to write out its events once it
+		had finished, in nanoseconds; the sink may have written some before. */
+	public long outputNanos()
+	{
+		return outputNanos ;
+	} // end of method outputNanos
+
+	/** Makes the generator send its events to the given sink, which is flushed
+		but not closed at the end of each parse.
+
+	  @param sink The sink to use, or null for text on the parse's event stream.
+	*/
+	public void setEventSink( EventSink sink )
+	{
+		eventSink = sink ;
+	} // end of method setEventSink
+
+	/** Chooses whether tokens are read through the lexer's allocation-free cursor.
+		In cursor mode nextToken is the same Token throughout, and its text is
+		only filled in for identifiers and symbols with a fixed spelling; the text of any other
+		token is lex.text().
+
+	  @param enabled true to use the cursor.
+	*/
+	public void setCursorMode( boolean enabled )
+	{
+		cursorMode = enabled ;
+	} // end of method setCursorMode
+
+	/** Chooses whether the lexer runs on a thread of its own, ahead of the
+		parser, passing tokens to it in batches through a TokenRing.  This
+		only applies to an analyser reading from a LexicalAnalyser.
+
+	  @param enabled true to lex on a separate thread.
+	*/
+	public void setPipelined( boolean enabled )
+	{
+		pipelined = enabled ;
+	} // end of method setPipelined
+
+	/** Returns the line index of the source being parsed, by which the line
+	  and column of a token can be found from its offset.  It is only
+	  complete once the whole source has been scanned, and there is none for
+	  a source lexed ahead on another thread, whose tokens have no offset.
+
+	  @return the line index, or null if there is none.
+	 */
+	public LineIndex lineIndex()
+	{
+		if (tokens != null)
+			return tokens.lineIndex() ;
+		else if ((ring == null) && (lex != null))
+			return lex.lineIndex() ;
+		else
+			return null ;
+	} // end of method lineIndex
+
+	/** Moves nextToken on to the next token from the lexer.
+
+	  @throws IOException in the event that the file cannot be read.
+	*/
+	void readNextToken() throws IOException
+	{
+		if ((++tokensRead & (CompileEvents.tokenBatchSize - 1)) == 0)
+			nextTokenBatch() ;
+		if (tokens != null)
+		{
+			if (tokenIndex < tokens.size() - 1)
+				tokenIndex++ ;
+			cursorToken.symbol = tokens.kind(tokenIndex) ;
+			cursorToken.lineNumber = tokens.line(tokenIndex) ;
+			cursorToken.offset = tokens.offset(tokenIndex) ;
+			cursorToken.text = null ;
+			nextToken = cursorToken ;
+		}
+		else if (ring != null)
+		{
+			cursorToken.symbol = ring.advance() ;
+			cursorToken.lineNumber = ring.line() ;
+			cursorToken.offset = -1 ;
+			cursorToken.text = null ;
+			nextToken = cursorToken ;
+		}
+		else if (cursorMode)
+		{
+			lex.advance() ;
+			cursorToken.symbol = lex.kind() ;
+			cursorToken.lineNumber = lex.line() ;
+			cursorToken.offset = lex.offset() ;
+			cursorToken.identifierId = lex.identifierId() ;
+			CharSequence text = lex.text() ;
+			cursorToken.text = (text instanceof String) ? (String) text : null ;
+			nextToken = cursorToken ;
+		}
+		else
+			nextToken = lex.getNextToken() ;
+	} // end of method readNextToken
+
+	/** Commits the event for the batch of tokens just read, if there is one,
+		and starts one for the next batch if the events are on. */
+	private void nextTokenBatch()
+	{
+		endTokenBatch() ;
+		if (CompileEvents.tokenBatchesEnabled())
+		{
+			tokenBatch = new CompileEvents.TokenBatch() ;
+			tokenBatch.fileName = sourceName ;
+			tokenBatch.tokensRead = tokensRead ;
+			tokenBatch.begin() ;
+		}
+	} // end of method nextTokenBatch
+
+	/** Commits the event for the batch of tokens read so far, if there is one. */
+	private void endTokenBatch()
+	{
+		if (tokenBatch != null)
+		{
+			tokenBatch.end() ;
+			if (tokenBatch.shouldCommit())
+			{
+				tokenBatch.tokens = tokensRead - tokenBatch.tokensRead ;
+				tokenBatch.tokensRead = tokensRead ;
+				tokenBatch.commit() ;
+			}
+			tokenBatch = null ;
+		}
+	} // end of method endTokenBatch
+
+	/** Passes nextToken to the code generator as a terminal. */
+	void insertNextToken()
+	{
+		if (tokens != null)
+			myGenerate.insertTerminal(nextToken.symbol, tokens.text(tokenIndex), nextToken.lineNumber) ;
+		else if (ring != null)
+			myGenerate.insertTerminal(nextToken.symbol, ring.text(), nextToken.lineNumber) ;
+		else if (cursorMode)
+			myGenerate.insertTerminal(nextToken.symbol, lex.text(), nextToken.lineNumber) ;
+		else
+			myGenerate.insertTerminal(nextToken) ;
+	} // end of method insertNextToken
+
+	/** Returns the type of a token further ahead than nextToken.  Only an
+		analyser working from a TokenBuffer can see past nextToken.
+
+	  @param ahead How many tokens past nextToken to look; 0 is nextToken.
+	  @return the type of that token, or Token.eofSymbol past the end.
+	*/
+	int peekSymbol( int ahead )
+	{
+		if (ahead == 0)
+			return nextToken.symbol ;
+		if (tokens == null)
+			throw new IllegalStateException("lookahead past the next token needs a TokenBuffer") ;
+		int i = tokenIndex + ahead ;
+		return (i < tokens.size()) ? tokens.kind(i) : Token.eofSymbol ;
+	} // end of method peekSymbol
+
 	/** Parses the given PrintStream with this instance's LexicalAnalyser.
 		
 	  @param ps The PrintStream object to read tokens from.
@@ -34,17 +333,104 @@ public abstract class AbstractSyntaxAnalyser
 	*/
 	public void parse( PrintStream ps ) throws IOException
 	{
+		parse( ps, System.out ) ;
+	} // end of method parse
+
+	/** Parses this instance's source, writing the generator's events to a
+		given stream rather than System.out.
+
+	  @param ps The PrintStream to report compilation errors to.
+	  @param events The PrintStream the generator writes its events to.
+	  @throws IOException in the event that the source can no longer be read.
+	*/
+	public void parse( PrintStream ps, PrintStream events ) throws IOException
+	{
+		CompileEvents.FileParsed fileEvent = new CompileEvents.FileParsed() ;
+		fileEvent.begin() ;
 		myGenerate = new Generate();
+		myGenerate.sourceName = sourceName ;
+		EventSink sink = (eventSink != null) ? eventSink : new TextEventSink( events ) ;
+		if (syntaxTree != null)
+		{
+			syntaxTree.reset() ;
+			sink = new TeeEventSink( sink, syntaxTree ) ;
+		}
+		myGenerate.setSink( sink ) ;
+		diagnostics.clear() ;
+		tokensAtLastError = -1 ;
+		errorsReported = 0 ;
+		tokenIndex = -1 ;
+		tokensRead = 0 ;
+		tokenBatch = null ;
+		nextTokenBatch() ;
+		if (pipelined && (tokens == null))
+		{
+			ring = new TokenRing( lex ) ;
+			ring.start() ;
+		}
 		try {
-			nextToken = lex.getNextToken() ;
+			readNextToken() ;
 			_statementPart_() ;
 			acceptTerminal(Token.eofSymbol) ;
-			myGenerate.reportSuccess() ;
+			if (diagnostics.isEmpty())
+				myGenerate.reportSuccess() ;
+			else
+				reportDiagnostics( ps, null ) ;
 		}
 		catch( CompilationException ex )
+		{
+			if (diagnostics.isEmpty())
+			{
+				ps.println( "Compilation Exception" );
+				ps.println( ex.toTraceString() );
+				errorsReported++ ;
+			}
+			else
+				reportDiagnostics( ps, ex ) ;
+		}
+		finally {
+			if (ring != null)
+			{
+				ring.close() ;
+				ring = null ;
+			}
+			myGenerate.abandonNonterminals() ;
+			endTokenBatch() ;
+			long start = System.nanoTime() ;
+			myGenerate.flush() ;
+			outputNanos = System.nanoTime() - start ;
+			if (fileEvent.shouldCommit())
+			{
+				fileEvent.fileName = sourceName ;
+				fileEvent.tokens = tokensLexed() ;
+				fileEvent.nonterminals = nonterminalsEntered() ;
+				fileEvent.errors = errorsReported ;
+				fileEvent.success = (errorsReported == 0) ;
+				fileEvent.commit() ;
+			}
+		}
+	} // end of method parse
+
+	/** Reports every error collected while recovering, in the same form as a
+		single error.
+
+	  @param ps The PrintStream to report to.
+	  @param ex The exception that ended the parse, or null.  It is left out
+		if it is about the same token as the last error collected.
+	*/
+	private void reportDiagnostics( PrintStream ps, CompilationException ex )
+	{
+		for (Diagnostic d : diagnostics)
+		{
+			ps.println( "Compilation Exception" );
+			ps.println( new DiagnosticException( d ).toTraceString() );
+		}
+		errorsReported += diagnostics.size() ;
+		if ((ex != null) && (tokensRead != tokensAtLastError))
 		{
 			ps.println( "Compilation Exception" );
 			ps.println( ex.toTraceString() );
+			errorsReported++ ;
 		}
-	} // end of method parse
+	} // end of method reportDiagnostics
 } // end of class AbstractSyntaxAnalyser
@@ -0,0 +1,227 @@
+/**
+ *
+ * Binary event sink for 254 exercise.  Writes parse events in a compact
+ * binary form that BinaryTraceDecoder turns back into exactly the text a
+ * TextEventSink would have written.
+ *
+ * Every number is a varint: seven bits to a byte, low bits first, the top
+ * bit set on all but the last byte.  A trace is a series of segments, one
+ * for each sink, and each segment starts with its own empty string table.
+ * Each record starts with a number whose two low bits give its kind:
+ *
+ *   0  terminal; the rest is the token kind.  A zigzag line delta from the
+ *      last terminal follows, then for identifiers, numbers and strings the
+ *      text as a string reference
+ *   1  commence nonterminal; the rest is its Nonterminal number, or
+ *      Nonterminal.count() with the name following as a string reference
+ *   2  finish nonterminal, in the same form
+ *   3  anything else; the rest is 0 for success, 1 for a line of text
+ *      (its length and characters follow), or 2 for the start of a segment
+ *      (followed by the bytes 'r' 'g' 'g' and the format version)
+ *
+ * A string reference is 0 for a new string, followed by its length and
+ * characters and added to the table, or else 1 + its index in the table.
+ * Characters are UTF-16 code units, so text comes back exactly as it went in.
+ *
+ **/
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BinaryEventSink implements EventSink
+{
+    /** The version of the format, written at the start of each segment. */
+    static final int version = 1;
+
+    /* Record kinds, in the two low bits of the first number of a record. */
+    static final int terminalRecord = 0, commenceRecord = 1, finishRecord = 2, otherRecord = 3;
+    /* Records of otherRecord kind. */
+    static final int successRecord = 0, lineRecord = 1, segmentRecord = 2;
+
+    /** The size of the output buffer, in bytes. */
+    private static final int bufferSize = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[bufferSize];
+    private int length;
+    /** The first error met writing out a full buffer, reported by the next flush. */
+    private IOException writeError;
+
+    /** The line of the last terminal, which the next one's is written relative to. */
+    private int lastLine;
+
+    /* The string table: an open-addressed hash table of the strings written
+       so far, with the index each was given, so text is matched without
+       making a String of it. */
+    private String[] strings = new String[1024];
+    private int[] indexes = new int[1024];
+    private int stringCount;
+
+    /**
+     * Creates a sink, starting a new segment
+     * @param out - where to write the trace
+     */
+    public BinaryEventSink( OutputStream out ) {
+        this.out = out;
+        writeNumber( (segmentRecord << 2) | otherRecord );
+        buffer[length++] = 'r';
+        buffer[length++] = 'g';
+        buffer[length++] = 'g';
+        writeNumber( version );
+    }
+
+    @Override
+    public void insertTerminal( int symbol, CharSequence text, int lineNumber ) {
+        reserve();
+        writeNumber( (symbol << 2) | terminalRecord );
+        int delta = lineNumber - lastLine;
+        writeNumber( (delta << 1) ^ (delta >> 31) );
+        lastLine = lineNumber;
+        if( (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) )
+            writeString( text );
+    }
+
+    @Override
+    public void commenceNonterminal( String name ) {
+        writeNonterminal( commenceRecord, name );
+    }
+
+    @Override
+    public void finishNonterminal( String name ) {
+        writeNonterminal( finishRecord, name );
+    }
+
+    @Override
+    public void reportSuccess() {
+        reserve();
+        writeNumber( (successRecord << 2) | otherRecord );
+    }
+
+    /**
+     * Writes a line of text to be reproduced as it is, such as the lines
+     * Compile writes between programs
+     * @param line - the line, without a line end
+     */
+    public void writeLine( CharSequence line ) {
+        int n = line.length();
+        reserve();
+        writeNumber( (lineRecord << 2) | otherRecord );
+        writeNumber( n );
+        writeChars( line );
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if( writeError != null ) {
+            IOException e = writeError;
+            writeError = null;
+            throw e;
+        }
+        out.write( buffer, 0, length );
+        length = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writeNonterminal( int kind, String name ) {
+        reserve();
+        int id = Nonterminal.getId( name );
+        if( id >= 0 ) {
+            writeNumber( (id << 2) | kind );
+        } else {
+            writeNumber( (Nonterminal.count() << 2) | kind );
+            writeString( name );
+        }
+    }
+
+    /**
+     * Writes a string reference, adding the string to the table if it is new
+     * @param text - the string, which may be a view that changes later
+     */
+    private void writeString( CharSequence text ) {
+        int n = text.length();
+        int hash = 0;
+        for( int i = 0; i < n; i++ )
+            hash = 31 * hash + text.charAt( i );
+        int mask = strings.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for( String s; (s = strings[slot]) != null; slot = (slot + 1) & mask ) {
+            if( (s.hashCode() == hash) && (s.length() == n) && s.contentEquals( text ) ) {
+                writeNumber( indexes[slot] + 1 );
+                return;
+            }
+        }
+
+        strings[slot] = text.toString();
+        indexes[slot] = stringCount++;
+        if( stringCount * 2 > strings.length )
+            growTable();
+        writeNumber( 0 );
+        writeNumber( n );
+        writeChars( text );
+    }
+
+    /** Doubles the size of the string table. */
+    private void growTable() {
+        String[] oldStrings = strings;
+        int[] oldIndexes = indexes;
+        strings = new String[oldStrings.length * 2];
+        indexes = new int[oldStrings.length * 2];
+        int mask = strings.length - 1;
+        for( int i = 0; i < oldStrings.length; i++ ) {
+            String s = oldStrings[i];
+            if( s == null )
+                continue;
+            int hash = s.hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while( strings[slot] != null )
+                slot = (slot + 1) & mask;
+            strings[slot] = s;
+            indexes[slot] = oldIndexes[i];
+        }
+    }
+
+    /** Makes sure the buffer has room for a record, less any characters, writing out what it holds if not. */
+    private void reserve() {
+        // a record is at most four numbers of five bytes each
+        if( length + 20 > buffer.length )
+            writeBuffer();
+    }
+
+    /** Writes out the buffer, keeping any error for the next flush. */
+    private void writeBuffer() {
+        try {
+            if( writeError == null )
+                out.write( buffer, 0, length );
+        } catch( IOException e ) {
+            writeError = e;
+        }
+        length = 0;
+    }
+
+    /** Writes characters, each of which takes at most three bytes, and then leaves room for a record. */
+    private void writeChars( CharSequence text ) {
+        for( int i = 0, n = text.length(); i < n; i++ ) {
+            if( length + 3 > buffer.length )
+                writeBuffer();
+            writeNumber( text.charAt( i ) );
+        }
+        reserve();
+    }
+
+    private void writeNumber( int n ) {
+        byte[] b = buffer;
+        int at = length;
+        while( (n & ~0x7f) != 0 ) {
+            b[at++] = (byte) ((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        b[at++] = (byte) n;
+        length = at;
+    }
+
+} // end of class BinaryEventSink
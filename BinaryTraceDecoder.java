@@ -0,0 +1,200 @@
+/**
+ *
+ * Binary trace decoder for 254 exercise.
+ *
+ * Reads a trace written by BinaryEventSink, record by record as it arrives,
+ * and sends the events on to a TextEventSink, so that the text comes out
+ * exactly as it would have been written in the first place.  Run on its own
+ * it turns a trace file, or standard input, back into text on standard
+ * output:
+ *
+ *   java BinaryTraceDecoder [trace]
+ *
+ **/
+
+import java.io.* ;
+
+public class BinaryTraceDecoder
+{
+	/** The size of the input buffer, in bytes. */
+	private static final int bufferSize = 1 << 16 ;
+
+	private final InputStream in ;
+	private final byte[] buffer = new byte[bufferSize] ;
+	private int position, limit ;
+
+	/** The strings of the current segment, by index. */
+	private String[] strings = new String[1024] ;
+	private int stringCount ;
+	/** The line of the last terminal. */
+	private int lastLine ;
+	/** A reusable buffer for the characters of a string. */
+	private char[] chars = new char[256] ;
+
+	/** Creates a decoder reading from a stream.
+
+	  @param in The trace.
+	 */
+	public BinaryTraceDecoder(InputStream in)
+	{
+		this.in = in ;
+	} // end of constructor method
+
+	/** Decodes the rest of the trace, flushing the sink at the end.
+
+	  @param sink Where to send the events and lines of the trace.
+	  @throws IOException if the trace cannot be read or is not a trace.
+	 */
+	public void decode(TextEventSink sink) throws IOException
+	{
+		boolean started = false ;
+		int record ;
+		while ((record = readRecordStart()) >= 0)
+		{
+			int rest = record >>> 2 ;
+			if (!started && (record != ((BinaryEventSink.segmentRecord << 2) | BinaryEventSink.otherRecord)))
+				throw new IOException("not a binary trace") ;
+			switch (record & 3)
+			{
+				case BinaryEventSink.terminalRecord :
+				{
+					int delta = readNumber() ;
+					lastLine += (delta >>> 1) ^ -(delta & 1) ;
+					boolean hasText = (rest == Token.identifier) || (rest == Token.numberConstant) ||
+							(rest == Token.stringConstant) ;
+					sink.insertTerminal(rest, hasText ? readString() : "", lastLine) ;
+					break ;
+				}
+				case BinaryEventSink.commenceRecord :
+					sink.commenceNonterminal(nonterminal(rest)) ;
+					break ;
+				case BinaryEventSink.finishRecord :
+					sink.finishNonterminal(nonterminal(rest)) ;
+					break ;
+				default :
+					if (rest == BinaryEventSink.segmentRecord)
+					{
+						startSegment() ;
+						started = true ;
+					}
+					else if (rest == BinaryEventSink.successRecord)
+						sink.reportSuccess() ;
+					else if (rest == BinaryEventSink.lineRecord)
+						sink.writeLine(readText(readNumber())) ;
+					else
+						throw new IOException("unknown record " + record + " in binary trace") ;
+			}
+		}
+		sink.flush() ;
+	} // end of method decode
+
+	/** Reads the rest of a segment start, and empties the string table. */
+	private void startSegment() throws IOException
+	{
+		if ((readByte() != 'r') || (readByte() != 'g') || (readByte() != 'g'))
+			throw new IOException("not a binary trace") ;
+		int v = readNumber() ;
+		if (v != BinaryEventSink.version)
+			throw new IOException("binary trace version " + v + " is not " + BinaryEventSink.version) ;
+		for (int i = 0 ; i < stringCount ; i++)
+			strings[i] = null ;
+		stringCount = 0 ;
+		lastLine = 0 ;
+	} // end of method startSegment
+
+	/** @return the name of the nonterminal with the given number, reading it if it has none. */
+	private String nonterminal(int id) throws IOException
+	{
+		return (id < Nonterminal.count()) ? Nonterminal.getName(id) : readString() ;
+	} // end of method nonterminal
+
+	/** Reads a string reference.
+
+	  @return the string, from the table or newly added to it.
+	 */
+	private String readString() throws IOException
+	{
+		int ref = readNumber() ;
+		if (ref > 0)
+		{
+			if (ref > stringCount)
+				throw new IOException("string " + ref + " is not in the table of " + stringCount) ;
+			return strings[ref - 1] ;
+		}
+		String s = readText(readNumber()) ;
+		if (stringCount == strings.length)
+		{
+			String[] larger = new String[stringCount * 2] ;
+			System.arraycopy(strings, 0, larger, 0, stringCount) ;
+			strings = larger ;
+		}
+		strings[stringCount++] = s ;
+		return s ;
+	} // end of method readString
+
+	/** Reads characters.
+
+	  @param n The number of characters.
+	  @return the characters, as a string.
+	 */
+	private String readText(int n) throws IOException
+	{
+		if (n > chars.length)
+			chars = new char[Math.max(n, chars.length * 2)] ;
+		for (int i = 0 ; i < n ; i++)
+			chars[i] = (char) readNumber() ;
+		return new String(chars, 0, n) ;
+	} // end of method readText
+
+	/** @return the first number of the next record, or -1 at the end of the trace. */
+	private int readRecordStart() throws IOException
+	{
+		if ((position == limit) && !fill())
+			return -1 ;
+		return readNumber() ;
+	} // end of method readRecordStart
+
+	private int readNumber() throws IOException
+	{
+		int n = 0 ;
+		for (int shift = 0 ; shift < 35 ; shift += 7)
+		{
+			int b = readByte() ;
+			n |= (b & 0x7f) << shift ;
+			if ((b & 0x80) == 0)
+				return n ;
+		}
+		throw new IOException("number too long in binary trace") ;
+	} // end of method readNumber
+
+	private int readByte() throws IOException
+	{
+		if ((position == limit) && !fill())
+			throw new EOFException("binary trace ends in the middle of a record") ;
+		return buffer[position++] & 0xff ;
+	} // end of method readByte
+
+	/** @return false if the trace has ended. */
+	private boolean fill() throws IOException
+	{
+		int n = in.read(buffer, 0, buffer.length) ;
+		if (n <= 0)
+			return false ;
+		position = 0 ;
+		limit = n ;
+		return true ;
+	} // end of method fill
+
+	public static void main(String[] args) throws IOException
+	{
+		InputStream in = (args.length > 0) ? new FileInputStream(args[0]) : System.in ;
+		try
+		{
+			new BinaryTraceDecoder(in).decode(new TextEventSink(System.out)) ;
+		}
+		finally
+		{
+			in.close() ;
+		}
+	} // end of main method
+} // end of class BinaryTraceDecoder
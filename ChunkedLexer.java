@@ -0,0 +1,330 @@
+/**
+ *
+ * Parallel lexer for one large file, for 254 exercise.
+ *
+ * Splits the file into byte ranges, lexes them at the same time on a
+ * fork-join pool, and stitches the results into one TokenBuffer holding
+ * exactly the tokens that lexing the file from start to end would make.
+ *
+ * A chunk can only be lexed from where it starts by guessing that nothing
+ * runs into it from the chunk before.  So each chunk starts at a line start
+ * if there is one near, which no comment runs past; only a string running
+ * over lines, or a chunk with no line end near its start, can make the guess
+ * wrong.  Each chunk counts its lines from 0.
+ *
+ * Stitching goes through the chunks in order, keeping track of where the
+ * lexer from the start of the file would next start to scan, and its line
+ * number there.  If a chunk started there, or one of its tokens ends there,
+ * the chunk's tokens from there on are the ones that lexer would make, and
+ * they are moved down by the difference in line numbers.  If not, the file
+ * is lexed again from there until it reaches such a point in some chunk.
+ *
+ **/
+
+import java.io.* ;
+import java.nio.MappedByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.file.Paths ;
+import java.nio.file.StandardOpenOption ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.List ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.ForkJoinTask ;
+import java.util.concurrent.atomic.AtomicBoolean ;
+
+public class ChunkedLexer
+{
+	/** The size of a chunk unless another is given, in bytes. */
+	public static final int defaultChunkSize = 4 << 20 ;
+
+	/** How far past where it would start a chunk looks for a line start. */
+	private static final int lineSearchLimit = 4096 ;
+
+	/** The tokens lexed from one chunk. */
+	private static class Chunk
+	{
+		/** Where lexing started. */
+		int from ;
+		/** The length of the file. */
+		int length ;
+		/** The tokens, with lines counted from 0 at from. */
+		final TokenBuffer tokens = new TokenBuffer() ;
+		/* Where each token starts and ends in the file. */
+		int[] starts = new int[256] ;
+		int[] ends = new int[256] ;
+		/** The first token that stitching has not yet looked past. */
+		int cursor ;
+
+		void add(LexicalAnalyser lex, int k)
+		{
+			int n = tokens.size() ;
+			if (n == ends.length)
+			{
+				int[] s = new int[n * 2], e = new int[n * 2] ;
+				System.arraycopy(starts, 0, s, 0, n) ;
+				System.arraycopy(ends, 0, e, 0, n) ;
+				starts = s ;
+				ends = e ;
+			}
+			starts[n] = lex.offset() ;
+			ends[n] = lex.end() ;
+			tokens.add(k, lex.text(), lex.line()) ;
+		} // end of method add
+
+		/** Finds where the lexer from the start of the file would carry on in this chunk.
+
+		  @param at Where that lexer would next start to scan.  Calls for one
+		    chunk must not go backwards.
+		  @return the index of its next token here, or -1 if the chunk has no
+		    token that ends at, nor starts at, that point.
+		 */
+		int resume(int at)
+		{
+			if (at == from)
+				return 0 ;
+			int n = tokens.size() ;
+			while ((cursor < n) && (ends[cursor] < at))
+				cursor++ ;
+			for (int i = cursor ; (i < n) && (ends[i] == at) ; i++)
+				if (settled(i))
+					return i + 1 ;
+			return -1 ;
+		} // end of method resume
+
+		/** Is the lexer's state after a token given just by where the token
+		  ends?  It is not after a token ending where it starts, which leaves
+		  half a character still to be scanned, nor after one ending at the end
+		  of the file, where the line end added to an unterminated last line
+		  may or may not have been scanned.
+
+		  @param i The index of a token.
+		  @return true if lexing could carry on from the end of the token.
+		 */
+		boolean settled(int i)
+		{
+			return (ends[i] > starts[i]) && (ends[i] < length) ;
+		} // end of method settled
+
+		/** @return where the last token ends, or from if there are none. */
+		int end()
+		{
+			int n = tokens.size() ;
+			return (n == 0) ? from : ends[n - 1] ;
+		} // end of method end
+	} // end of class Chunk
+
+	/** The name of the file. */
+	private final String fileName ;
+	/** The size of a chunk, in bytes. */
+	private final int chunkSize ;
+	/** The number of tokens lexed again while stitching in the last call to tokenise(). */
+	private int relexed ;
+
+	/** Creates a lexer for a file.
+
+	  @param fileName The file to read.
+	  @param chunkSize The size of a chunk, in bytes.
+	 */
+	public ChunkedLexer(String fileName, int chunkSize)
+	{
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunk size " + chunkSize) ;
+		this.fileName = fileName ;
+		this.chunkSize = chunkSize ;
+	} // end of constructor method
+
+	/** Tokenises the whole file, lexing its chunks on the given pool.  A file
+	  that fits in one chunk, or is too large to map, is lexed on this thread.
+
+	  @param pool The pool to lex on.
+	  @return every token of the file, up to and including end of file.
+	  @throws IOException if the file cannot be read.
+	 */
+	public TokenBuffer tokenise(ForkJoinPool pool) throws IOException
+	{
+		relexed = 0 ;
+		MappedByteBuffer source ;
+		int length ;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+		{
+			long size = channel.size() ;
+			if (size > Integer.MAX_VALUE)
+				return new TokenBuffer(fileName, false) ;
+			if (size <= chunkSize)
+				return new TokenBuffer(fileName, true) ;
+			source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size) ;
+			length = (int) size ;
+		}
+
+		int[] starts = chunkStarts(source, length) ;
+		List<ForkJoinTask<Chunk>> chunks = new ArrayList<ForkJoinTask<Chunk>>() ;
+		AtomicBoolean stopped = new AtomicBoolean() ;
+		for (int i = 0 ; i < starts.length ; i++)
+		{
+			final int from = starts[i],
+					to = (i + 1 < starts.length) ? starts[i + 1] : Integer.MAX_VALUE ;
+			chunks.add(pool.submit(() -> lexChunk(source, length, from, to, stopped))) ;
+		}
+
+		try
+		{
+			return stitch(source, length, chunks) ;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt() ;
+			throw new InterruptedIOException("interrupted while lexing " + fileName) ;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause() ;
+			throw new IOException(e.getCause()) ;
+		}
+		finally
+		{
+			// chunks still being lexed once the end of file is reached are not needed, but
+			// must be finished with before the file is unmapped
+			stopped.set(true) ;
+			for (ForkJoinTask<Chunk> task : chunks)
+				task.quietlyJoin() ;
+		}
+	} // end of method tokenise
+
+	/** @return the number of tokens lexed again while stitching in the last
+	  call to tokenise(), because a chunk's start was guessed wrongly. */
+	public int relexed()
+	{
+		return relexed ;
+	} // end of method relexed
+
+	/** Chooses where each chunk starts: every chunkSize bytes, moved on to
+	  just after the next line end if there is one within lineSearchLimit.
+
+	  @return the starts, beginning with 0.
+	 */
+	private int[] chunkStarts(MappedByteBuffer source, int length)
+	{
+		int count = (int) ((length + (long) chunkSize - 1) / chunkSize) ;
+		int[] starts = new int[count] ;
+		int n = 1 ;
+		for (int i = 1 ; i < count ; i++)
+		{
+			int from = (int) ((long) i * chunkSize) ;
+			int limit = (int) Math.min(length, (long) from + Math.min(lineSearchLimit, chunkSize)) ;
+			for (int j = from ; j < limit ; j++)
+			{
+				byte b = source.get(j) ;
+				if ((b == '\n') || (b == '\r'))
+				{
+					from = j + 1 ;
+					if ((b == '\r') && (from < length) && (source.get(from) == '\n'))
+						from++ ;
+					break ;
+				}
+			}
+			if ((from > starts[n - 1]) && (from < length))
+				starts[n++] = from ;
+		}
+		return (n == count) ? starts : Arrays.copyOf(starts, n) ;
+	} // end of method chunkStarts
+
+	/** Lexes the tokens that start in one chunk, and the end of file if it is the last.
+
+	  @param from Where the chunk starts.
+	  @param to Where the next chunk starts, or Integer.MAX_VALUE for the last.
+	  @param stopped Set when the chunk is no longer needed.
+	  @return the tokens, or as many as were lexed before stopped was set.
+	  @throws IOException if the file cannot be read.
+	 */
+	private static Chunk lexChunk(MappedByteBuffer source, int length, int from, int to, AtomicBoolean stopped)
+			throws IOException
+	{
+		Chunk chunk = new Chunk() ;
+		chunk.from = from ;
+		chunk.length = length ;
+		LexicalAnalyser lex = new LexicalAnalyser(source, length, from, 0) ;
+		int k ;
+		do
+		{
+			k = lex.advance() ;
+			if (lex.offset() >= to)
+				break ;
+			chunk.add(lex, k) ;
+		}
+		while ((k != Token.eofSymbol) && !stopped.get()) ;
+		return chunk ;
+	} // end of method lexChunk
+
+	/** Joins the chunks' tokens into one buffer, lexing again wherever a
+	  chunk's start was guessed wrongly.
+
+	  @param chunks The chunks, in order, as they finish.
+	  @return every token of the file.
+	 */
+	private TokenBuffer stitch(MappedByteBuffer source, int length, List<ForkJoinTask<Chunk>> chunks)
+			throws IOException, InterruptedException, ExecutionException
+	{
+		TokenBuffer result = new TokenBuffer() ;
+		// where the lexer from the start of the file would next start to scan, its line there,
+		// and whether its state there is given by those alone (see Chunk.settled)
+		int at = 0, line = 0 ;
+		boolean settled = true ;
+		LexicalAnalyser lex = null ;
+
+		for (ForkJoinTask<Chunk> f : chunks)
+		{
+			Chunk chunk = f.get() ;
+			int first = settled ? chunk.resume(at) : -1 ;
+			while ((first < 0) && (at < chunk.end()))
+			{
+				if (lex == null)
+					lex = new LexicalAnalyser(source, length, at, line) ;
+				int k = lex.advance() ;
+				result.add(k, lex.text(), lex.line()) ;
+				relexed++ ;
+				if (k == Token.eofSymbol)
+					return result ;
+				at = lex.end() ;
+				line = lex.line() ;
+				settled = (at > lex.offset()) && (at < length) ;
+				if (settled)
+					first = chunk.resume(at) ;
+			}
+			if (first < 0)
+				continue ;
+
+			lex = null ;
+			int n = chunk.tokens.size() ;
+			boolean atEnd = (n > 0) && (chunk.tokens.kind(n - 1) == Token.eofSymbol) ;
+			// unless the chunk goes on to the end of file, stop where lexing could be carried on
+			if (!atEnd)
+				while ((n > first) && !chunk.settled(n - 1))
+					n-- ;
+			if (first < n)
+			{
+				int lineShift = line - ((first == 0) ? 0 : chunk.tokens.line(first - 1)) ;
+				result.append(chunk.tokens, first, n, lineShift) ;
+				if (atEnd)
+					return result ;
+				at = chunk.ends[n - 1] ;
+				line = chunk.tokens.line(n - 1) + lineShift ;
+			}
+		}
+
+		// the last chunk was guessed wrongly to its end
+		if (lex == null)
+			lex = new LexicalAnalyser(source, length, at, line) ;
+		int k ;
+		do
+		{
+			k = lex.advance() ;
+			result.add(k, lex.text(), lex.line()) ;
+			relexed++ ;
+		}
+		while (k != Token.eofSymbol) ;
+		return result ;
+	} // end of method stitch
+} // end of class ChunkedLexer
@@ -12,6 +12,7 @@
 
 public class CompilationException extends Exception
 {
+	private static final long serialVersionUID = 1L;
 	private static final int MAX_TRACE_DEPTH = 20;
 
 	public CompilationException( String message ) {
@@ -11,11 +11,58 @@
  **/
 
 import java.io.* ;
+import java.nio.file.Files ;
+import java.nio.file.Paths ;
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.Future ;
 
 public class Compile {
 
+	/** The file being compiled, in a sequential run only. */
 	public static String fileName;
 
+	/** Scan each program through a memory-mapped buffer instead of a reader. */
+	private boolean memoryMapped = false;
+	/** Parse through the lexer's cursor instead of allocating a Token per token. */
+	private boolean cursorMode = false;
+	/** Tokenise each program into a TokenBuffer before parsing it. */
+	private boolean buffered = false;
+	/** How many programs to compile at once; 1 compiles them in turn on this thread. */
+	private int parallelism = 1;
+	/** The most errors to collect from each program, or 0 to stop at the first. */
+	private int errorLimit = 0;
+	/** Lex each program in chunks of this many bytes at once, or 0 to lex it from start to end. */
+	private int chunkSize = 0;
+	/** Parse the top-level statements of each program at once, on the common fork-join pool. */
+	private boolean splitStatements = false;
+	/** Lex each program on a thread of its own while it is parsed. */
+	private boolean pipelined = false;
+	/** Parse with the table-driven analyser rather than the recursive one. */
+	private boolean tableDriven = false;
+	/** Write events from a background thread, in a sequential run. */
+	private boolean backgroundOutput = false;
+	/** Write the whole of standard output as a binary trace, for BinaryTraceDecoder to turn back into text. */
+	private boolean binaryTrace = false;
+	/** Where the lines between programs go in a binary trace, or null to print them. */
+	private BinaryEventSink trace = null;
+	/** Where compiled output is cached between runs, or null not to cache. */
+	private File cacheDirectory = null;
+	/** The most the cache may hold, in megabytes. */
+	private long cacheLimit = 256;
+	/** The cache in cacheDirectory, once opened. */
+	private CompileCache cache = null;
+	/** Counts of the work done, registered for JMX clients to read, or null to keep none. */
+	private CompileMetrics metrics = null;
+
+	/** The buffered output of one program compiled in a parallel run. */
+	private static class CompiledFile {
+		ByteArrayOutputStream events = new ByteArrayOutputStream();
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+	}
+
 	/**
 	 *
 	 * main
@@ -26,7 +73,9 @@ public class Compile {
 		String prefix = "Programs Folder" + File.separator + "program";
 		int fileNumber = -1;
 		int exitFlag = 0;
-		System.out.println( "rggSTART" );
+		if( binaryTrace )
+			trace = new BinaryEventSink( System.out );
+		println( "rggSTART" );
 		PrintStream out = null;
 		String outputFile = new String( "res.txt" );
 		boolean goon = true;
@@ -38,27 +87,243 @@ public class Compile {
 			System.exit(0);
 		}
 
-		while( goon ) {
-			fileNumber++ ;
-			fileName = prefix + fileNumber;
-			goon = ((new File(fileName)).exists());
-			if( goon ) {
-				System.out.println();
-				System.out.println( "rggFILE " + fileName );
-
-				SyntaxAnalyser syn = new SyntaxAnalyser(fileName) ;
-				syn.parse( out ) ;
-			} else System.out.println(fileName+" does not exist");
+		if( cacheDirectory != null )
+			cache = new CompileCache( cacheDirectory, cacheLimit << 20 );
+		if( metrics != null ) {
+			try {
+				metrics.register();
+			} catch( javax.management.JMException e ) {
+				System.out.println("unable to register metrics "+e);
+				metrics = null;
+			}
+		}
+
+		if( parallelism > 1 ) {
+			goParallel( prefix, out );
+		} else {
+			EventSink sink = (backgroundOutput && !binaryTrace) ? new TextEventSink( System.out, true ) : null;
+			while( goon ) {
+				fileNumber++ ;
+				fileName = prefix + fileNumber;
+				goon = ((new File(fileName)).exists());
+				if( goon ) {
+					println( "" );
+					println( "rggFILE " + fileName );
+
+					compileFile( fileName, sink, System.out, out );
+				} else println(fileName+" does not exist");
+			}
+			if( sink != null )
+				sink.close();
 		}
 
-		System.out.println() ;
-		System.out.println("rggFINISH") ;
+		println( "" ) ;
+		println("rggFINISH") ;
 		out.flush();out.close();
 		System.exit(exitFlag) ;
 	} // end of main method
 
+	/**
+	 * Writes a line of standard output, as a record of the binary trace if
+	 * there is one.
+	 *
+	 * @param line The line, without a line end.
+	 */
+	private void println( String line ) throws IOException {
+		if( trace == null ) {
+			System.out.println( line );
+			return;
+		}
+		trace.writeLine( line );
+		trace.flush();
+	} // end of method println
+
+	/**
+	 * Compiles every program concurrently on a fork-join pool.  Each program's
+	 * events and errors are buffered and then written out in program order, so
+	 * the output is the same as a sequential run.
+	 *
+	 * @param prefix The path of the programs, less their number.
+	 * @param out Where error reports are written.
+	 */
+	private void goParallel( String prefix, PrintStream out ) throws IOException {
+		List<String> names = new ArrayList<String>();
+		String name;
+		while( (new File(name = prefix + names.size())).exists() )
+			names.add( name );
+
+		ForkJoinPool pool = new ForkJoinPool( parallelism );
+		try {
+			List<Future<CompiledFile>> results = new ArrayList<Future<CompiledFile>>();
+			for( String file : names )
+				results.add( pool.submit( () -> {
+					CompiledFile compiled = new CompiledFile();
+					PrintStream events = new PrintStream( compiled.events );
+					PrintStream errors = new PrintStream( compiled.errors );
+					compileFile( file, null, events, errors );
+					events.flush();
+					errors.flush();
+					return compiled;
+				} ) );
+
+			for( int i = 0; i < names.size(); i++ ) {
+				CompiledFile compiled = results.get( i ).get();
+				println( "" );
+				println( "rggFILE " + names.get( i ) );
+				System.out.flush();
+				compiled.events.writeTo( System.out );
+				compiled.errors.writeTo( out );
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "interrupted while compiling" );
+		} catch( ExecutionException e ) {
+			if( e.getCause() instanceof IOException )
+				throw (IOException) e.getCause();
+			throw new IOException( e.getCause() );
+		} finally {
+			pool.shutdownNow();
+		}
+
+		println( name + " does not exist" );
+	} // end of method goParallel
+
+	/**
+	 * Compiles one program, through the cache if there is one.
+	 *
+	 * @param file The path of the program.
+	 * @param sink Where the generator sends its events, or null for text on events.
+	 * @param events Where the generator's events are written.
+	 * @param errors Where error reports are written.
+	 */
+	private void compileFile( String file, EventSink sink, PrintStream events, PrintStream errors ) throws IOException {
+		long start = System.nanoTime();
+		if( cache != null )
+			compileCached( file, sink, events, errors );
+		else {
+			long output = parseFile( file, sink, events, errors );
+			if( metrics != null )
+				metrics.outputWritten( output );
+		}
+		if( metrics != null )
+			metrics.fileCompiled( new File(file).length(), System.nanoTime() - start );
+	} // end of method compileFile
+
+	/**
+	 * Parses one program.
+	 *
+	 * @param file The path of the program.
+	 * @param sink Where the generator sends its events, or null for text, or a binary trace, on events.
+	 * @param events Where the generator's events are written.
+	 * @param errors Where error reports are written.
+	 * @return how long the events took to write out at the end of the parse, in nanoseconds.
+	 */
+	private long parseFile( String file, EventSink sink, PrintStream events, PrintStream errors ) throws IOException {
+		long start = System.nanoTime();
+		TokenBuffer tokens = null;
+		if( chunkSize > 0 )
+			tokens = new ChunkedLexer( file, chunkSize ).tokenise( ForkJoinPool.commonPool() );
+		else if( buffered || splitStatements )
+			tokens = new TokenBuffer( file, memoryMapped );
+		long lexed = System.nanoTime();
+		if( (metrics != null) && (tokens != null) )
+			metrics.fileLexed( lexed - start );
+		if( (sink == null) && binaryTrace )
+			sink = new BinaryEventSink( events );
+
+		AbstractSyntaxAnalyser syn;
+		if( splitStatements )
+			syn = new ParallelSyntaxAnalyser( file, tokens, ForkJoinPool.commonPool() );
+		else if( tableDriven )
+			syn = (tokens != null)
+					? new TableSyntaxAnalyser(file, tokens)
+					: new TableSyntaxAnalyser(file, memoryMapped) ;
+		else
+			syn = (tokens != null)
+					? new SyntaxAnalyser(file, tokens)
+					: new SyntaxAnalyser(file, memoryMapped) ;
+		syn.setCursorMode( cursorMode ) ;
+		syn.setPipelined( pipelined ) ;
+		syn.setEventSink( sink ) ;
+		syn.setErrorRecovery( errorLimit ) ;
+		syn.parse( errors, events ) ;
+		if( metrics != null )
+			metrics.fileParsed( syn, System.nanoTime() - lexed - syn.outputNanos() );
+		return syn.outputNanos();
+	} // end of method parseFile
+
+	/**
+	 * Parses one program unless its output is already in the cache, and
+	 * writes the output out either way.
+	 *
+	 * @param file The path of the program.
+	 * @param sink The sink events have been going to, or null.
+	 * @param events Where the events are written.
+	 * @param errors Where error reports are written.
+	 */
+	private void compileCached( String file, EventSink sink, PrintStream events, PrintStream errors ) throws IOException {
+		String key = CompileCache.key( new File(file).getName(), Files.readAllBytes( Paths.get(file) ),
+				"recover=" + errorLimit + (binaryTrace ? " binary" : "") );
+		CompileCache.Entry entry = cache.get( key );
+		if( entry == null ) {
+			CompiledFile compiled = new CompiledFile();
+			PrintStream e = new PrintStream( compiled.events );
+			PrintStream r = new PrintStream( compiled.errors );
+			parseFile( file, null, e, r );
+			e.flush();
+			r.flush();
+			entry = new CompileCache.Entry( compiled.events.toByteArray(), compiled.errors.toByteArray() );
+			cache.put( key, entry.events, entry.errors );
+		}
+		long start = System.nanoTime();
+		if( sink != null )
+			sink.flush();
+		events.write( entry.events );
+		events.flush();
+		errors.write( entry.errors );
+		if( metrics != null )
+			metrics.outputWritten( System.nanoTime() - start );
+	} // end of method compileCached
+
 	public static void main(String args[]) throws IOException {
 		Compile c = new Compile();
+		for( String arg : args )
+			if( arg.equals("-mapped") )
+				c.memoryMapped = true;
+			else if( arg.equals("-cursor") )
+				c.cursorMode = true;
+			else if( arg.equals("-buffered") )
+				c.buffered = true;
+			else if( arg.equals("-parallel") )
+				c.parallelism = Runtime.getRuntime().availableProcessors();
+			else if( arg.equals("-recover") )
+				c.errorLimit = 100;
+			else if( arg.startsWith("-recover=") )
+				c.errorLimit = Integer.parseInt( arg.substring(9) );
+			else if( arg.equals("-background") )
+				c.backgroundOutput = true;
+			else if( arg.startsWith("-parallel=") )
+				c.parallelism = Integer.parseInt( arg.substring(10) );
+			else if( arg.equals("-chunked") )
+				c.chunkSize = ChunkedLexer.defaultChunkSize;
+			else if( arg.startsWith("-chunked=") )
+				c.chunkSize = Integer.parseInt( arg.substring(9) ) << 10;
+			else if( arg.equals("-split") )
+				c.splitStatements = true;
+			else if( arg.equals("-pipelined") )
+				c.pipelined = true;
+			else if( arg.equals("-table") )
+				c.tableDriven = true;
+			else if( arg.equals("-cache") )
+				c.cacheDirectory = new File( ".compile-cache" );
+			else if( arg.startsWith("-cache=") )
+				c.cacheDirectory = new File( arg.substring(7) );
+			else if( arg.equals("-binary") )
+				c.binaryTrace = true;
+			else if( arg.equals("-metrics") )
+				c.metrics = new CompileMetrics();
+			else if( arg.startsWith("-cachelimit=") )
+				c.cacheLimit = Long.parseLong( arg.substring(12) );
 		c.go();
 	};
 
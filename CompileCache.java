@@ -0,0 +1,285 @@
+/**
+ *
+ * Compile result cache for 254 exercise.
+ *
+ * Keeps the event output and error report of each program on disk, filed
+ * under a hash of the program's text, its name, the options that change the
+ * output and a fingerprint of the compiler's own classes, so a program is
+ * only parsed again when it, or the compiler, has changed.  The fingerprint
+ * covers every class file beside this one, or the whole jar if the compiler
+ * is packed in one, so no class that changes the output can be left out.
+ *
+ * Each entry is written to a temporary file and renamed into place, so any
+ * number of Compile processes can share one cache directory: a reader sees a
+ * whole entry or none.  Reading an entry marks it as recently used, and once
+ * the entries come to more than the size limit the least recently used are
+ * deleted.
+ *
+ **/
+
+import java.io.* ;
+import java.net.URISyntaxException ;
+import java.nio.channels.FileChannel ;
+import java.nio.file.* ;
+import java.security.CodeSource ;
+import java.security.MessageDigest ;
+import java.security.NoSuchAlgorithmException ;
+import java.util.Arrays ;
+import java.util.Comparator ;
+
+public class CompileCache
+{
+	/** Marks the start of an entry, and changes whenever its layout does. */
+	private static final int magic = 0x43434531 ;
+
+	/** The ending of entry file names. */
+	private static final String entrySuffix = ".entry" ;
+
+	/** The fingerprint of the compiler, worked out once. */
+	private static byte[] compilerFingerprint ;
+
+	/** The cached output of one program. */
+	public static class Entry
+	{
+		public final byte[] events ;
+		public final byte[] errors ;
+
+		public Entry(byte[] events, byte[] errors)
+		{
+			this.events = events ;
+			this.errors = errors ;
+		} // end of constructor method
+	} // end of class Entry
+
+	private final File directory ;
+	private final long sizeLimit ;
+	/** Roughly how many bytes the entries take up, counting only this process's additions since it last looked. */
+	private long size ;
+
+	/** Opens a cache directory, creating it if need be.
+
+	  @param directory Where the entries are kept.
+	  @param sizeLimit The most bytes the entries may take up.
+	  @throws IOException if the directory cannot be created.
+	 */
+	public CompileCache(File directory, long sizeLimit) throws IOException
+	{
+		this.directory = directory ;
+		this.sizeLimit = sizeLimit ;
+		Files.createDirectories(directory.toPath()) ;
+		for (File f : entries())
+			size += f.length() ;
+		if (size > sizeLimit)
+			evict() ;
+	} // end of constructor method
+
+	/** Works out the key of a program.
+
+	  @param name The name of the program, which appears in error reports.
+	  @param text The text of the program.
+	  @param options Anything else that changes the output, such as the error limit.
+	  @return the key, as hex digits.
+	 */
+	public static String key(String name, byte[] text, String options)
+	{
+		MessageDigest digest = sha256() ;
+		digest.update(fingerprint()) ;
+		digest.update((name + '\0' + options + '\0' + System.lineSeparator() + '\0').getBytes()) ;
+		digest.update(text) ;
+		return hex(digest.digest()) ;
+	} // end of method key
+
+	/** Looks up a program, marking its entry as recently used.
+
+	  @param key The key of the program.
+	  @return the cached output, or null if there is none.
+	 */
+	public Entry get(String key)
+	{
+		File f = entryFile(key) ;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))))
+		{
+			if (in.readInt() != magic)
+				throw new IOException("not a cache entry") ;
+			byte[] events = new byte[in.readInt()] ;
+			byte[] errors = new byte[in.readInt()] ;
+			in.readFully(events) ;
+			in.readFully(errors) ;
+			f.setLastModified(System.currentTimeMillis()) ;
+			return new Entry(events, errors) ;
+		}
+		catch (FileNotFoundException e)
+		{
+			return null ;
+		}
+		catch (IOException e)
+		{
+			// a damaged entry is a miss, and is replaced when the program is stored again
+			f.delete() ;
+			return null ;
+		}
+	} // end of method get
+
+	/** Stores the output of a program, then evicts old entries if the cache
+	  has grown past its limit.  Failing to store is not an error; the
+	  program is simply compiled again next time.
+
+	  @param key The key of the program.
+	  @param events The program's event output.
+	  @param errors The program's error report.
+	 */
+	public void put(String key, byte[] events, byte[] errors)
+	{
+		File f = entryFile(key) ;
+		File temporary = null ;
+		try
+		{
+			temporary = File.createTempFile(key, ".tmp", directory) ;
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary))))
+			{
+				out.writeInt(magic) ;
+				out.writeInt(events.length) ;
+				out.writeInt(errors.length) ;
+				out.write(events) ;
+				out.write(errors) ;
+			}
+			Files.move(temporary.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING) ;
+			temporary = null ;
+			synchronized (this)
+			{
+				size += f.length() ;
+				if (size > sizeLimit)
+					evict() ;
+			}
+		}
+		catch (IOException e)
+		{
+			if (temporary != null)
+				temporary.delete() ;
+		}
+	} // end of method put
+
+	/** Deletes the least recently used entries until they fit in three
+	  quarters of the limit, so that eviction is not needed again straight
+	  away.  A lock file keeps two processes from evicting at once; threads
+	  in one process take turns on the cache itself. */
+	private void evict() throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(new File(directory, "lock").toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+		{
+			// held until the channel is closed
+			channel.lock() ;
+			File[] files = entries() ;
+			long[] used = new long[files.length] ;
+			Integer[] order = new Integer[files.length] ;
+			long total = 0 ;
+			for (int i = 0 ; i < files.length ; i++)
+			{
+				used[i] = files[i].lastModified() ;
+				order[i] = i ;
+				total += files[i].length() ;
+			}
+			Arrays.sort(order, Comparator.comparingLong(i -> used[i])) ;
+
+			for (int i = 0 ; (i < order.length) && (total > sizeLimit / 4 * 3) ; i++)
+			{
+				File f = files[order[i]] ;
+				long length = f.length() ;
+				if (f.delete())
+					total -= length ;
+			}
+			size = total ;
+		}
+	} // end of method evict
+
+	/** @return every entry in the directory. */
+	private File[] entries()
+	{
+		File[] files = directory.listFiles((d, n) -> n.endsWith(entrySuffix)) ;
+		return (files == null) ? new File[0] : files ;
+	} // end of method entries
+
+	private File entryFile(String key)
+	{
+		return new File(directory, key + entrySuffix) ;
+	} // end of method entryFile
+
+	/** Works out the fingerprint of the compiler from the bytes of its
+	  classes, so that any change to the lexer, parser or output format
+	  makes every entry stale.  If the classes cannot be found, the
+	  fingerprint is made unique to this process, so that no entry written
+	  by another compiler is ever read.
+
+	  @return the fingerprint.
+	 */
+	private static synchronized byte[] fingerprint()
+	{
+		if (compilerFingerprint == null)
+		{
+			MessageDigest digest = sha256() ;
+			try
+			{
+				for (File f : compilerFiles())
+				{
+					digest.update(f.getName().getBytes()) ;
+					digest.update(Files.readAllBytes(f.toPath())) ;
+				}
+			}
+			catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e)
+			{
+				digest.update(Long.toString(System.nanoTime()).getBytes()) ;
+				digest.update(Long.toString(ProcessHandle.current().pid()).getBytes()) ;
+			}
+			compilerFingerprint = digest.digest() ;
+		}
+		return compilerFingerprint ;
+	} // end of method fingerprint
+
+	/** Finds the files the compiler's classes were loaded from: every class
+	  file in the directory this class came from, nested classes and all,
+	  in order of name, or else the jar it came from.
+
+	  @return the files.
+	  @throws IOException if the classes' location is not known.
+	  @throws URISyntaxException if the location is not a file.
+	 */
+	private static File[] compilerFiles() throws IOException, URISyntaxException
+	{
+		CodeSource source = CompileCache.class.getProtectionDomain().getCodeSource() ;
+		if ((source == null) || (source.getLocation() == null))
+			throw new IOException("the compiler's classes have no known location") ;
+		File home = new File(source.getLocation().toURI()) ;
+		if (!home.isDirectory())
+			return new File[] { home } ;
+		File[] classes = home.listFiles((d, n) -> n.endsWith(".class")) ;
+		if (classes == null)
+			throw new IOException("cannot list " + home) ;
+		Arrays.sort(classes) ;
+		return classes ;
+	} // end of method compilerFiles
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256") ;
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e) ;
+		}
+	} // end of method sha256
+
+	private static String hex(byte[] bytes)
+	{
+		char[] digits = new char[bytes.length * 2] ;
+		for (int i = 0 ; i < bytes.length ; i++)
+		{
+			digits[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16) ;
+			digits[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16) ;
+		}
+		return new String(digits) ;
+	} // end of method hex
+} // end of class CompileCache
@@ -0,0 +1,216 @@
+/**
+ *
+ * Client of the compile daemon for 254 exercise.
+ *
+ * Does what Compile does, writing the same standard output and res.txt,
+ * but has a running CompileDaemon do the compiling.  With no file names it
+ * compiles the programs folder, as Compile does; otherwise it compiles the
+ * files named.  -socket=PATH or -port=N say where the daemon is, as they do
+ * for the daemon, and -recover[=n] asks it to recover from errors.
+ * -shutdown stops the daemon instead, which it only agrees to over a
+ * Unix-domain socket.  Over a Unix-domain socket the daemon is given the
+ * path of each file; over TCP, where it takes no paths, the client reads
+ * each file and sends its bytes.
+ *
+ **/
+
+import java.io.* ;
+import java.net.SocketAddress ;
+import java.net.StandardProtocolFamily ;
+import java.net.UnixDomainSocketAddress ;
+import java.nio.channels.Channels ;
+import java.nio.channels.SocketChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.Files ;
+import java.nio.file.Paths ;
+import java.util.ArrayList ;
+import java.util.List ;
+
+public class CompileClient
+{
+	private final InputStream in ;
+	private final OutputStream out ;
+	/** Send the text of each file rather than its path, as the daemon wants over TCP. */
+	private final boolean sendSource ;
+
+	/** Creates a client on a connection to the daemon.
+
+	  @param connection The connection.
+	  @throws IOException if the connection is not open.
+	 */
+	public CompileClient(SocketChannel connection) throws IOException
+	{
+		in = new BufferedInputStream(Channels.newInputStream(connection), 1 << 16) ;
+		out = new BufferedOutputStream(Channels.newOutputStream(connection)) ;
+		sendSource = !(connection.getRemoteAddress() instanceof UnixDomainSocketAddress) ;
+	} // end of constructor method
+
+	/** Asks the daemon to collect up to a number of errors from each program.
+
+	  @param limit The most errors, or 0 to stop at the first.
+	  @throws IOException if the daemon does not agree.
+	 */
+	public void setErrorRecovery(int limit) throws IOException
+	{
+		request("RECOVER " + limit) ;
+		String reply = CompileDaemon.readLine(in) ;
+		if (!"OK".equals(reply))
+			throw new IOException("daemon replied " + reply + " to RECOVER") ;
+	} // end of method setErrorRecovery
+
+	/** Has the daemon compile a file.
+
+	  @param file The path of the file, which is made absolute for the daemon.
+	  @param events Where to write the event trace.
+	  @param errors Where to write the error report.
+	  @throws IOException if the file or the daemon could not be read, or the
+	    daemon could not compile the file.
+	 */
+	public void compile(String file, OutputStream events, OutputStream errors) throws IOException
+	{
+		if (sendSource)
+		{
+			byte[] source = Files.readAllBytes(Paths.get(file)) ;
+			CompileDaemon.writeLine(out, "SOURCE " + file + " " + source.length) ;
+			out.write(source) ;
+			out.flush() ;
+		}
+		else
+			request("FILE " + new File(file).getAbsolutePath()) ;
+		copyReply("EVENTS ", events) ;
+		copyReply("ERRORS ", errors) ;
+	} // end of method compile
+
+	/** Stops the daemon, which closes the connection once it has agreed.
+
+	  @throws IOException if the daemon refused, as it does over TCP.
+	 */
+	public void shutdown() throws IOException
+	{
+		request("SHUTDOWN") ;
+		String reply = CompileDaemon.readLine(in) ;
+		if (reply == null)
+			return ;
+		if (!reply.startsWith("FAILED "))
+			throw new IOException("daemon replied " + reply + " to SHUTDOWN") ;
+		int n = Integer.parseInt(reply.substring(7)) ;
+		throw new IOException(new String(in.readNBytes(n), StandardCharsets.UTF_8)) ;
+	} // end of method shutdown
+
+	private void request(String line) throws IOException
+	{
+		CompileDaemon.writeLine(out, line) ;
+		out.flush() ;
+	} // end of method request
+
+	/** Reads one counted part of a reply and copies its bytes.
+
+	  @param tag What the part should start with.
+	  @param to Where to copy the bytes.
+	  @throws IOException if the daemon sent something else.
+	 */
+	private void copyReply(String tag, OutputStream to) throws IOException
+	{
+		String line = CompileDaemon.readLine(in) ;
+		if (line == null)
+			throw new EOFException("daemon closed the connection") ;
+		boolean failed = line.startsWith("FAILED ") ;
+		if (!failed && !line.startsWith(tag))
+			throw new IOException("daemon replied " + line) ;
+		long n = Long.parseLong(line.substring(failed ? 7 : tag.length())) ;
+		if (failed)
+			throw new IOException(new String(in.readNBytes((int) n), StandardCharsets.UTF_8)) ;
+		byte[] buffer = new byte[8192] ;
+		while (n > 0)
+		{
+			int got = in.read(buffer, 0, (int) Math.min(buffer.length, n)) ;
+			if (got < 0)
+				throw new EOFException("daemon closed the connection") ;
+			to.write(buffer, 0, got) ;
+			n -= got ;
+		}
+	} // end of method copyReply
+
+	/** Opens a connection to the daemon.
+
+	  @param address Where it is listening.
+	  @return the connection.
+	  @throws IOException if no daemon is listening there.
+	 */
+	public static SocketChannel connect(SocketAddress address) throws IOException
+	{
+		SocketChannel c = (address instanceof UnixDomainSocketAddress)
+				? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open() ;
+		try
+		{
+			c.connect(address) ;
+		}
+		catch (IOException e)
+		{
+			c.close() ;
+			throw new IOException("no compile daemon at " + address + ": " + e.getMessage(), e) ;
+		}
+		return c ;
+	} // end of method connect
+
+	public static void main(String[] args) throws IOException
+	{
+		int limit = 0 ;
+		boolean shutdown = false ;
+		List<String> files = new ArrayList<String>() ;
+		for (String arg : args)
+			if (arg.equals("-recover"))
+				limit = 100 ;
+			else if (arg.startsWith("-recover="))
+				limit = Integer.parseInt(arg.substring(9)) ;
+			else if (arg.equals("-shutdown"))
+				shutdown = true ;
+			else if (!arg.startsWith("-"))
+				files.add(arg) ;
+
+		try (SocketChannel connection = connect(CompileDaemon.address(args)))
+		{
+			CompileClient client = new CompileClient(connection) ;
+			if (shutdown)
+			{
+				try
+				{
+					client.shutdown() ;
+				}
+				catch (IOException e)
+				{
+					System.err.println("compile daemon not stopped: " + e.getMessage()) ;
+					System.exit(1) ;
+				}
+				return ;
+			}
+			if (limit > 0)
+				client.setErrorRecovery(limit) ;
+
+			String missing = null ;
+			if (files.isEmpty())
+			{
+				String prefix = "Programs Folder" + File.separator + "program" ;
+				while (new File(prefix + files.size()).exists())
+					files.add(prefix + files.size()) ;
+				missing = prefix + files.size() ;
+			}
+
+			System.out.println("rggSTART") ;
+			try (PrintStream res = new PrintStream(new FileOutputStream("res.txt")))
+			{
+				for (String file : files)
+				{
+					System.out.println() ;
+					System.out.println("rggFILE " + file) ;
+					System.out.flush() ;
+					client.compile(file, System.out, res) ;
+				}
+			}
+			if (missing != null)
+				System.out.println(missing + " does not exist") ;
+			System.out.println() ;
+			System.out.println("rggFINISH") ;
+		}
+	} // end of main method
+} // end of class CompileClient
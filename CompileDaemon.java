@@ -0,0 +1,449 @@
+/**
+ *
+ * Compile daemon for 254 exercise.
+ *
+ * Stays running and compiles programs sent to it over a socket, so that
+ * the JVM starts once and its compiled code for the lexer and parser is
+ * kept from one request to the next, rather than each run of Compile
+ * starting cold.  Each thread serving connections keeps its own analyser,
+ * token buffer, identifier pool and output buffers, and reuses them for
+ * every program.  The identifiers go into the thread's own pool, which is
+ * emptied before each program, rather than the pool shared across the JVM,
+ * which never lets go of them and would grow with every new name any
+ * client ever sent.
+ *
+ * It listens on a Unix-domain socket, .compile-daemon.sock unless
+ * -socket=PATH is given, or on a loopback port with -port=N.  Requests and
+ * replies are lines of text, each ending in '\n', and counted bytes:
+ *
+ *   FILE path               compile the file at path, over a Unix-domain socket only
+ *   SOURCE name length      compile the source that follows, length bytes of it
+ *   RECOVER n               collect up to n errors from each program from now on
+ *   QUIT                    close the connection
+ *   SHUTDOWN                stop the daemon, over a Unix-domain socket only
+ *
+ * A program compiled is answered with "EVENTS n", n bytes of event trace,
+ * "ERRORS m" and m bytes of error report, just as Compile would write them
+ * to standard output and res.txt.  RECOVER is answered with "OK", and a
+ * request that cannot be carried out with "FAILED n" and n bytes saying why.
+ * CompileClient is a client that compiles the programs folder.
+ *
+ * Each connection has a thread to itself for as long as it is open, out of
+ * 16 unless -threads=N is given, however many processors there are: a
+ * connection spends most of its time waiting on its client, not computing.
+ * So that a client that goes quiet cannot hold a thread, and every client
+ * queued behind it, indefinitely, a connection the daemon has waited on
+ * for 60 seconds, or -idle=SECONDS, is closed; -idle=0 waits for ever.
+ * Waiting counts from the end of one reply, or from when the connection is
+ * given its thread, until the next request and any source with it are read,
+ * and while a reply is written; compiling does not.
+ *
+ * Any local user can connect to a loopback port, so over TCP the daemon
+ * compiles only source sent to it, and refuses FILE, which would otherwise
+ * read any file for them that the daemon's own user can read, and SHUTDOWN,
+ * which would let any of them stop a daemon others are using.  Only those
+ * who can reach the socket file can do either over a Unix-domain socket.
+ *
+ **/
+
+import java.io.* ;
+import java.net.InetAddress ;
+import java.net.InetSocketAddress ;
+import java.net.SocketAddress ;
+import java.net.StandardProtocolFamily ;
+import java.net.UnixDomainSocketAddress ;
+import java.nio.channels.Channels ;
+import java.nio.channels.ClosedChannelException ;
+import java.nio.channels.ServerSocketChannel ;
+import java.nio.channels.SocketChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.Files ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ConcurrentLinkedQueue ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+
+public class CompileDaemon
+{
+	/** The socket used unless another is given. */
+	public static final String defaultSocket = ".compile-daemon.sock" ;
+
+	/** The number of connections served at once unless another is given. */
+	public static final int defaultThreads = 16 ;
+	/** How long to wait on a client before closing its connection, in seconds,
+	  unless another limit is given. */
+	public static final int defaultIdleSeconds = 60 ;
+
+	/** The longest request line read, in bytes. */
+	private static final int lineLimit = 8192 ;
+
+	/** What one serving thread keeps from one program to the next. */
+	private static class Worker
+	{
+		final TokenBuffer tokens = new TokenBuffer() ;
+		final SyntaxAnalyser syn = new SyntaxAnalyser("", tokens) ;
+		final ByteArrayOutputStream events = new ByteArrayOutputStream() ;
+		final ByteArrayOutputStream errors = new ByteArrayOutputStream() ;
+		final PrintStream errorStream = new PrintStream(errors) ;
+		/** The identifiers of the program being compiled. */
+		final IdentifierPool identifiers = new IdentifierPool() ;
+
+		/** The text of a program sent inline, with '\n' line ends. */
+		char[] text = new char[4096] ;
+
+		Worker()
+		{
+			syn.setEventSink(new TextEventSink(events)) ;
+		} // end of constructor method
+	} // end of class Worker
+
+	/** Every worker made, for identifiersHeld(). */
+	private final ConcurrentLinkedQueue<Worker> allWorkers = new ConcurrentLinkedQueue<Worker>() ;
+	private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(this::newWorker) ;
+
+	/** Scan files through a memory-mapped buffer instead of a reader. */
+	private boolean memoryMapped = false ;
+	/** The most errors to collect from each program, unless a connection asks otherwise. */
+	private int errorLimit = 0 ;
+	/** Counts of the work done, registered for JMX clients to read, or null to keep none. */
+	private CompileMetrics metrics = null ;
+	/** How long to wait on a client, in seconds, or 0 for no limit. */
+	private int idleSeconds = defaultIdleSeconds ;
+
+	/** The connections being waited on, each with the System.nanoTime() when
+	  the wait began.  A connection whose program is being compiled is left out. */
+	private final Map<SocketChannel, Long> waitingSince = new ConcurrentHashMap<SocketChannel, Long>() ;
+
+	/** The listening socket, once open. */
+	private ServerSocketChannel server ;
+	/** Set by SHUTDOWN. */
+	private volatile boolean stopping ;
+
+	/** Sets how long to wait on a client before closing its connection.
+
+	  @param seconds The limit, or 0 to wait for ever.
+	 */
+	public void setIdleLimit(int seconds)
+	{
+		idleSeconds = seconds ;
+	} // end of method setIdleLimit
+
+	/** Serves connections until a SHUTDOWN request.  A connection holds one
+	  of the threads until it closes, or until the idle limit closes it, and
+	  those that arrive while every thread is busy wait for one, however long.
+
+	  @param address Where to listen.
+	  @param threads How many connections to serve at once.
+	  @throws IOException if the socket cannot be opened.
+	 */
+	public void serve(SocketAddress address, int threads) throws IOException
+	{
+		boolean unix = address instanceof UnixDomainSocketAddress ;
+		server = unix ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open() ;
+		if (unix)
+			// a socket file left by a daemon that did not shut down cleanly
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath()) ;
+		server.bind(address) ;
+		System.out.println("compile daemon listening on " + address) ;
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads) ;
+		ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r ->
+		{
+			Thread t = new Thread(r, "compile daemon watchdog") ;
+			t.setDaemon(true) ;
+			return t ;
+		}) ;
+		if (idleSeconds > 0)
+		{
+			long period = Math.max(100, idleSeconds * 1000L / 4) ;
+			watchdog.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS) ;
+		}
+		try
+		{
+			while (!stopping)
+			{
+				SocketChannel connection ;
+				try
+				{
+					connection = server.accept() ;
+				}
+				catch (IOException e)
+				{
+					if (stopping)
+						break ;
+					throw e ;
+				}
+				pool.execute(() -> serveConnection(connection, unix)) ;
+			}
+		}
+		finally
+		{
+			watchdog.shutdownNow() ;
+			pool.shutdown() ;
+			server.close() ;
+			if (unix)
+				Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath()) ;
+		}
+	} // end of method serve
+
+	/** Closes every connection that has been waited on for longer than the
+	  idle limit.  Its thread, blocked reading or writing, then fails and
+	  gives the connection up.
+	 */
+	private void closeIdle()
+	{
+		long now = System.nanoTime(), limit = TimeUnit.SECONDS.toNanos(idleSeconds) ;
+		for (Map.Entry<SocketChannel, Long> waiting : waitingSince.entrySet())
+			if ((now - waiting.getValue() > limit) && waitingSince.remove(waiting.getKey(), waiting.getValue()))
+				try
+				{
+					waiting.getKey().close() ;
+				}
+				catch (IOException e)
+				{
+					// it is being given up either way
+				}
+	} // end of method closeIdle
+
+	/** Answers the requests on one connection until it closes.
+
+	  @param connection The connection.
+	  @param unix true if it came over a Unix-domain socket, where FILE and
+	    SHUTDOWN are allowed.
+	 */
+	private void serveConnection(SocketChannel connection, boolean unix)
+	{
+		try (SocketChannel c = connection)
+		{
+			InputStream in = new BufferedInputStream(Channels.newInputStream(c)) ;
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(c), 1 << 16) ;
+			int limit = errorLimit ;
+			waitingSince.put(c, System.nanoTime()) ;
+			String line ;
+			while ((line = readLine(in)) != null)
+			{
+				try
+				{
+					if (line.startsWith("FILE ") && !unix)
+						fail(out, "FILE is not accepted over TCP; send the program with SOURCE") ;
+					else if (line.startsWith("FILE "))
+						compile(c, line.substring(5), null, limit, out) ;
+					else if (line.startsWith("SOURCE "))
+					{
+						int space = line.lastIndexOf(' ') ;
+						int length = Integer.parseInt(line.substring(space + 1)) ;
+						compile(c, line.substring(7, Math.max(7, space)), readSource(in, length), limit, out) ;
+					}
+					else if (line.startsWith("RECOVER "))
+					{
+						limit = Integer.parseInt(line.substring(8)) ;
+						writeLine(out, "OK") ;
+					}
+					else if (line.equals("QUIT"))
+						break ;
+					else if (line.equals("SHUTDOWN") && !unix)
+						fail(out, "SHUTDOWN is not accepted over TCP; stop the daemon through its Unix-domain socket or by signal") ;
+					else if (line.equals("SHUTDOWN"))
+					{
+						stopping = true ;
+						server.close() ;
+						break ;
+					}
+					else
+						fail(out, "unknown request: " + line) ;
+				}
+				catch (NumberFormatException e)
+				{
+					fail(out, "bad number in request: " + line) ;
+				}
+				out.flush() ;
+				waitingSince.put(c, System.nanoTime()) ;
+			}
+			out.flush() ;
+		}
+		catch (IOException e)
+		{
+			// the client has gone, or was closed for being idle; there is no one to tell
+		}
+		finally
+		{
+			waitingSince.remove(connection) ;
+		}
+	} // end of method serveConnection
+
+	/** Compiles one program and writes the reply.  The connection is not
+	  waited on while the program is compiled, only while the reply is written.
+
+	  @param c The connection.
+	  @param name The path of the program, or its name if the source is given.
+	  @param source The bytes of the program, or null to read the file.
+	  @param limit The most errors to collect, or 0 to stop at the first.
+	  @param out Where to write the reply.
+	 */
+	private void compile(SocketChannel c, String name, byte[] source, int limit, OutputStream out) throws IOException
+	{
+		if (waitingSince.remove(c) == null)
+			throw new ClosedChannelException() ;
+		Worker w = workers.get() ;
+		long start = System.nanoTime() ;
+		try
+		{
+			w.tokens.clear() ;
+			w.identifiers.clear() ;
+			LexicalAnalyser lex ;
+			if (source == null)
+				lex = new LexicalAnalyser(name, memoryMapped) ;
+			else
+			{
+				String text = new String(source, StandardCharsets.UTF_8) ;
+				if (w.text.length < text.length())
+					w.text = new char[Math.max(text.length(), w.text.length * 2)] ;
+				int length = IncrementalAnalyser.normalise(text, w.text, 0) ;
+				lex = new LexicalAnalyser(w.text, length, 0, 0) ;
+			}
+			lex.setIdentifierPool(w.identifiers) ;
+			w.tokens.addAll(lex) ;
+		}
+		catch (IOException e)
+		{
+			waitingSince.put(c, System.nanoTime()) ;
+			fail(out, "unable to read " + name + ": " + e) ;
+			return ;
+		}
+		long lexed = System.nanoTime() ;
+
+		w.events.reset() ;
+		w.errors.reset() ;
+		w.syn.reset(name, w.tokens) ;
+		w.syn.setErrorRecovery(limit) ;
+		w.syn.parse(w.errorStream, null) ;
+		w.errorStream.flush() ;
+		if (metrics != null)
+		{
+			metrics.fileLexed(lexed - start) ;
+			metrics.fileParsed(w.syn, System.nanoTime() - lexed - w.syn.outputNanos()) ;
+			metrics.outputWritten(w.syn.outputNanos()) ;
+			metrics.fileCompiled((source != null) ? source.length : new File(name).length(), System.nanoTime() - start) ;
+		}
+
+		waitingSince.put(c, System.nanoTime()) ;
+		writeLine(out, "EVENTS " + w.events.size()) ;
+		w.events.writeTo(out) ;
+		writeLine(out, "ERRORS " + w.errors.size()) ;
+		w.errors.writeTo(out) ;
+	} // end of method compile
+
+	/** @return a worker for a thread that has not served a connection before. */
+	private Worker newWorker()
+	{
+		Worker w = new Worker() ;
+		allWorkers.add(w) ;
+		return w ;
+	} // end of method newWorker
+
+	/** @return the number of identifiers the serving threads hold between
+	  them, which is at most those of the last program each compiled. */
+	int identifiersHeld()
+	{
+		int held = 0 ;
+		for (Worker w : allWorkers)
+			held += w.identifiers.size() ;
+		return held ;
+	} // end of method identifiersHeld
+
+	/** Writes a FAILED reply.
+
+	  @param out Where to write it.
+	  @param why What went wrong.
+	 */
+	private static void fail(OutputStream out, String why) throws IOException
+	{
+		byte[] message = why.getBytes(StandardCharsets.UTF_8) ;
+		writeLine(out, "FAILED " + message.length) ;
+		out.write(message) ;
+	} // end of method fail
+
+	/** Reads the source that follows a SOURCE request.
+
+	  @param length How many bytes it is.
+	  @return the bytes.
+	  @throws EOFException if the connection ends first.
+	 */
+	private static byte[] readSource(InputStream in, int length) throws IOException
+	{
+		if (length < 0)
+			throw new NumberFormatException("negative length") ;
+		byte[] source = in.readNBytes(length) ;
+		if (source.length < length)
+			throw new EOFException("source ends after " + source.length + " of " + length + " bytes") ;
+		return source ;
+	} // end of method readSource
+
+	/** Reads a line of a request, in UTF-8.
+
+	  @return the line without its line end, or null if the connection has closed.
+	 */
+	static String readLine(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream() ;
+		int b ;
+		while ((b = in.read()) != '\n')
+		{
+			if (b < 0)
+				return (line.size() == 0) ? null : line.toString(StandardCharsets.UTF_8) ;
+			if (line.size() == lineLimit)
+				throw new IOException("request line longer than " + lineLimit + " bytes") ;
+			line.write(b) ;
+		}
+		String s = line.toString(StandardCharsets.UTF_8) ;
+		return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s ;
+	} // end of method readLine
+
+	/** Writes a line of a reply, in UTF-8, ending in '\n'. */
+	static void writeLine(OutputStream out, String line) throws IOException
+	{
+		out.write((line + "\n").getBytes(StandardCharsets.UTF_8)) ;
+	} // end of method writeLine
+
+	/** Works out where to listen, or connect, from the -socket= and -port= arguments.
+
+	  @param args The command line.
+	  @return the address.
+	 */
+	static SocketAddress address(String[] args)
+	{
+		SocketAddress address = UnixDomainSocketAddress.of(defaultSocket) ;
+		for (String arg : args)
+			if (arg.startsWith("-socket="))
+				address = UnixDomainSocketAddress.of(arg.substring(8)) ;
+			else if (arg.startsWith("-port="))
+				address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(arg.substring(6))) ;
+		return address ;
+	} // end of method address
+
+	public static void main(String[] args) throws Exception
+	{
+		CompileDaemon d = new CompileDaemon() ;
+		int threads = defaultThreads ;
+		for (String arg : args)
+			if (arg.equals("-mapped"))
+				d.memoryMapped = true ;
+			else if (arg.equals("-recover"))
+				d.errorLimit = 100 ;
+			else if (arg.startsWith("-recover="))
+				d.errorLimit = Integer.parseInt(arg.substring(9)) ;
+			else if (arg.startsWith("-threads="))
+				threads = Integer.parseInt(arg.substring(9)) ;
+			else if (arg.startsWith("-idle="))
+				d.idleSeconds = Integer.parseInt(arg.substring(6)) ;
+			else if (arg.equals("-metrics"))
+			{
+				d.metrics = new CompileMetrics() ;
+				d.metrics.register() ;
+			}
+		d.serve(address(args), threads) ;
+	} // end of main method
+} // end of class CompileDaemon
@@ -0,0 +1,133 @@
+/**
+ *
+ * Flight recorder events for 254 exercise.
+ *
+ * The analysers and generators commit these as they go, so that a JFR
+ * recording of a batch run, opened in JDK Mission Control, shows where each
+ * file's time went: the whole parse, each batch of tokens read, each
+ * nonterminal and each flush of the output.  They are all in the "Compiler"
+ * category and are turned on and off with the rest of a recording's
+ * settings while the program runs, for example by "jcmd <pid> JFR.start".
+ * Nonterminal events are many, so they are off unless the settings turn
+ * them on.
+ *
+ * While an event type is off, the code that would commit it only checks a
+ * flag: the probes below answer that without making an event.
+ *
+ **/
+
+import jdk.jfr.Category ;
+import jdk.jfr.Description ;
+import jdk.jfr.Enabled ;
+import jdk.jfr.Event ;
+import jdk.jfr.Label ;
+import jdk.jfr.Name ;
+
+public class CompileEvents
+{
+	/** The number of tokens in a TokenBatch event, a power of two. */
+	public static final int tokenBatchSize = 1024 ;
+
+	/** One file parsed, from its first token to the flush of its output. */
+	@Name("compile.File")
+	@Label("File Parsed")
+	@Category("Compiler")
+	public static class FileParsed extends Event
+	{
+		@Label("File Name")
+		public String fileName ;
+
+		@Label("Tokens")
+		@Description("The tokens read by the parser")
+		public int tokens ;
+
+		@Label("Nonterminals")
+		public int nonterminals ;
+
+		@Label("Errors")
+		public int errors ;
+
+		@Label("Success")
+		@Description("True if the file parsed without error")
+		public boolean success ;
+	} // end of class FileParsed
+
+	/** A batch of tokenBatchSize tokens read by the parser, and parsed, or
+	  fewer at the end of a file. */
+	@Name("compile.TokenBatch")
+	@Label("Token Batch")
+	@Category("Compiler")
+	public static class TokenBatch extends Event
+	{
+		@Label("File Name")
+		public String fileName ;
+
+		@Label("Tokens")
+		@Description("The tokens in the batch")
+		public int tokens ;
+
+		@Label("Tokens Read")
+		@Description("The tokens read from the file by the end of the batch")
+		public int tokensRead ;
+	} // end of class TokenBatch
+
+	/** One nonterminal, from the event commencing it to the one finishing it. */
+	@Name("compile.Nonterminal")
+	@Label("Nonterminal")
+	@Category("Compiler")
+	@Enabled(false)
+	public static class NonterminalParsed extends Event
+	{
+		@Label("File Name")
+		public String fileName ;
+
+		@Label("Nonterminal")
+		public String nonterminal ;
+
+		@Label("Depth")
+		@Description("The number of nonterminals it is nested in, counted from when the event was turned on")
+		public int depth ;
+
+		@Label("Tokens")
+		@Description("The terminals accepted in it")
+		public int tokens ;
+
+		@Label("Completed")
+		@Description("False if an error stopped it from being finished")
+		public boolean completed ;
+	} // end of class NonterminalParsed
+
+	/** A flush of a generator's output. */
+	@Name("compile.OutputFlush")
+	@Label("Output Flush")
+	@Category("Compiler")
+	public static class OutputFlush extends Event
+	{
+		@Label("File Name")
+		public String fileName ;
+
+		@Label("Tokens")
+		@Description("The terminals the generator had been given by the flush")
+		public int tokens ;
+
+		@Label("Nonterminals")
+		@Description("The nonterminals the generator had commenced by the flush")
+		public int nonterminals ;
+	} // end of class OutputFlush
+
+	/* Events never committed, asked only whether their type is on. */
+	private static final TokenBatch tokenBatchProbe = new TokenBatch() ;
+	private static final NonterminalParsed nonterminalProbe = new NonterminalParsed() ;
+
+	/** @return true if TokenBatch events are being recorded. */
+	static boolean tokenBatchesEnabled()
+	{
+		return tokenBatchProbe.isEnabled() ;
+	} // end of method tokenBatchesEnabled
+
+	/** @return true if NonterminalParsed events are being recorded. */
+	static boolean nonterminalsEnabled()
+	{
+		return nonterminalProbe.isEnabled() ;
+	} // end of method nonterminalsEnabled
+} // end of class CompileEvents
@@ -0,0 +1,219 @@
+/**
+ *
+ * Compilation metrics for 254 exercise.
+ *
+ * Counts what Compile does, and how long it takes, for a JMX client to read
+ * while a batch runs.  Every count is a LongAdder, so the threads of a
+ * parallel run each add to a cell of their own rather than fighting over
+ * one; the counts are only summed when they are read.  Compile adds to them
+ * once a phase of a program is done, never token by token.
+ *
+ **/
+
+import java.lang.management.ManagementFactory ;
+import java.util.concurrent.atomic.LongAdder ;
+import javax.management.JMException ;
+import javax.management.MBeanServer ;
+import javax.management.ObjectName ;
+
+public class CompileMetrics implements CompileMetricsMBean
+{
+	/** The name the metrics are registered under. */
+	public static final String objectName = "Compile:type=CompileMetrics" ;
+
+	/** A histogram of times, in buckets that double in width. */
+	static class LatencyHistogram
+	{
+		/** The number of buckets; the last counts every time past 2^30 microseconds. */
+		static final int bucketCount = 32 ;
+
+		private final LongAdder[] buckets = new LongAdder[bucketCount] ;
+		private final LongAdder count = new LongAdder() ;
+		private final LongAdder totalNanos = new LongAdder() ;
+
+		LatencyHistogram()
+		{
+			for (int i = 0 ; i < bucketCount ; i++)
+				buckets[i] = new LongAdder() ;
+		} // end of constructor method
+
+		/** Counts one time.
+
+		  @param nanos The time, in nanoseconds.
+		 */
+		void record(long nanos)
+		{
+			long micros = Math.max(nanos, 0) / 1000 ;
+			int i = Math.min(64 - Long.numberOfLeadingZeros(micros), bucketCount - 1) ;
+			buckets[i].increment() ;
+			count.increment() ;
+			totalNanos.add(nanos) ;
+		} // end of method record
+
+		/** @return the count in each bucket. */
+		long[] counts()
+		{
+			long[] counts = new long[bucketCount] ;
+			for (int i = 0 ; i < bucketCount ; i++)
+				counts[i] = buckets[i].sum() ;
+			return counts ;
+		} // end of method counts
+
+		/** @return the mean time, in microseconds, or 0 if none has been counted. */
+		double meanMicros()
+		{
+			long n = count.sum() ;
+			return (n == 0) ? 0 : totalNanos.sum() / (1000.0 * n) ;
+		} // end of method meanMicros
+
+		void reset()
+		{
+			for (LongAdder b : buckets)
+				b.reset() ;
+			count.reset() ;
+			totalNanos.reset() ;
+		} // end of method reset
+	} // end of class LatencyHistogram
+
+	private final LongAdder filesProcessed = new LongAdder() ;
+	private final LongAdder tokensLexed = new LongAdder() ;
+	private final LongAdder nonterminalsEntered = new LongAdder() ;
+	private final LongAdder errorsReported = new LongAdder() ;
+	private final LongAdder bytesRead = new LongAdder() ;
+
+	private final LatencyHistogram fileLatency = new LatencyHistogram() ;
+	private final LatencyHistogram lexLatency = new LatencyHistogram() ;
+	private final LatencyHistogram parseLatency = new LatencyHistogram() ;
+	private final LatencyHistogram outputLatency = new LatencyHistogram() ;
+
+	/** Registers the metrics with the platform MBean server, where jconsole can find them.
+
+	  @throws JMException if metrics are already registered under objectName.
+	 */
+	public void register() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer() ;
+		server.registerMBean(this, new ObjectName(objectName)) ;
+	} // end of method register
+
+	/** Counts a program compiled.
+
+	  @param bytes The size of the program.
+	  @param nanos How long it took to compile, in nanoseconds.
+	 */
+	public void fileCompiled(long bytes, long nanos)
+	{
+		filesProcessed.increment() ;
+		bytesRead.add(bytes) ;
+		fileLatency.record(nanos) ;
+	} // end of method fileCompiled
+
+	/** Counts a program lexed before it was parsed.
+
+	  @param nanos How long the lexing took, in nanoseconds.
+	 */
+	public void fileLexed(long nanos)
+	{
+		lexLatency.record(nanos) ;
+	} // end of method fileLexed
+
+	/** Counts a program parsed.
+
+	  @param syn The analyser that parsed it.
+	  @param nanos How long the parse took, less writing out the output, in nanoseconds.
+	 */
+	public void fileParsed(AbstractSyntaxAnalyser syn, long nanos)
+	{
+		tokensLexed.add(syn.tokensLexed()) ;
+		nonterminalsEntered.add(syn.nonterminalsEntered()) ;
+		errorsReported.add(syn.errorsReported()) ;
+		parseLatency.record(nanos) ;
+	} // end of method fileParsed
+
+	/** Counts a program's output written out.
+
+	  @param nanos How long the writing took, in nanoseconds.
+	 */
+	public void outputWritten(long nanos)
+	{
+		outputLatency.record(nanos) ;
+	} // end of method outputWritten
+
+	public long getFilesProcessed()
+	{
+		return filesProcessed.sum() ;
+	} // end of method getFilesProcessed
+
+	public long getTokensLexed()
+	{
+		return tokensLexed.sum() ;
+	} // end of method getTokensLexed
+
+	public long getNonterminalsEntered()
+	{
+		return nonterminalsEntered.sum() ;
+	} // end of method getNonterminalsEntered
+
+	public long getErrorsReported()
+	{
+		return errorsReported.sum() ;
+	} // end of method getErrorsReported
+
+	public long getBytesRead()
+	{
+		return bytesRead.sum() ;
+	} // end of method getBytesRead
+
+	public long[] getFileLatencyHistogram()
+	{
+		return fileLatency.counts() ;
+	} // end of method getFileLatencyHistogram
+
+	public long[] getLexLatencyHistogram()
+	{
+		return lexLatency.counts() ;
+	} // end of method getLexLatencyHistogram
+
+	public long[] getParseLatencyHistogram()
+	{
+		return parseLatency.counts() ;
+	} // end of method getParseLatencyHistogram
+
+	public long[] getOutputLatencyHistogram()
+	{
+		return outputLatency.counts() ;
+	} // end of method getOutputLatencyHistogram
+
+	public double getMeanFileLatencyMicros()
+	{
+		return fileLatency.meanMicros() ;
+	} // end of method getMeanFileLatencyMicros
+
+	public double getMeanLexLatencyMicros()
+	{
+		return lexLatency.meanMicros() ;
+	} // end of method getMeanLexLatencyMicros
+
+	public double getMeanParseLatencyMicros()
+	{
+		return parseLatency.meanMicros() ;
+	} // end of method getMeanParseLatencyMicros
+
+	public double getMeanOutputLatencyMicros()
+	{
+		return outputLatency.meanMicros() ;
+	} // end of method getMeanOutputLatencyMicros
+
+	public void reset()
+	{
+		filesProcessed.reset() ;
+		tokensLexed.reset() ;
+		nonterminalsEntered.reset() ;
+		errorsReported.reset() ;
+		bytesRead.reset() ;
+		fileLatency.reset() ;
+		lexLatency.reset() ;
+		parseLatency.reset() ;
+		outputLatency.reset() ;
+	} // end of method reset
+} // end of class CompileMetrics
@@ -0,0 +1,55 @@
+/**
+ *
+ * Management interface of CompileMetrics for 254 exercise, as seen from
+ * jconsole or any other JMX client.
+ *
+ * Each latency histogram is an array of counts: count i is of times under
+ * 2^i microseconds, and at least 2^(i-1) for i > 0; the last counts every
+ * longer time too.
+ *
+ **/
+
+public interface CompileMetricsMBean
+{
+	/** @return the number of programs compiled, from source or from the cache. */
+	long getFilesProcessed() ;
+
+	/** @return the number of tokens the parser read, in programs that were parsed. */
+	long getTokensLexed() ;
+
+	/** @return the number of nonterminals the parser entered, in programs that were parsed. */
+	long getNonterminalsEntered() ;
+
+	/** @return the number of compilation errors reported, in programs that were parsed. */
+	long getErrorsReported() ;
+
+	/** @return the size of every program compiled, in bytes. */
+	long getBytesRead() ;
+
+	/** @return the times taken to compile each program. */
+	long[] getFileLatencyHistogram() ;
+
+	/** @return the times taken to lex each program that was lexed before it was parsed. */
+	long[] getLexLatencyHistogram() ;
+
+	/** @return the times taken to parse each program, with any lexing done as it was parsed. */
+	long[] getParseLatencyHistogram() ;
+
+	/** @return the times taken to write out each program's events and errors. */
+	long[] getOutputLatencyHistogram() ;
+
+	/** @return the mean time taken to compile a program, in microseconds. */
+	double getMeanFileLatencyMicros() ;
+
+	/** @return the mean time taken to lex a program, in microseconds. */
+	double getMeanLexLatencyMicros() ;
+
+	/** @return the mean time taken to parse a program, in microseconds. */
+	double getMeanParseLatencyMicros() ;
+
+	/** @return the mean time taken to write out a program's output, in microseconds. */
+	double getMeanOutputLatencyMicros() ;
+
+	/** Sets every count back to zero. */
+	void reset() ;
+} // end of interface CompileMetricsMBean
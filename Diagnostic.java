@@ -0,0 +1,106 @@
+/**
+ *
+ * A syntax error found in a source file: the token found, what was expected
+ * instead, and where.  Nothing is formatted until the message is asked for.
+ *
+ **/
+
+public final class Diagnostic
+{
+	/** The type of the token found, as a class constant from Token. */
+	public final int symbol ;
+	/** The text of the token found, if the analyser had it. */
+	public final String text ;
+	/** The line the token was found on. */
+	public final int lineNumber ;
+	/** Where the token was found in the source, or -1 if not known. */
+	public final int offset ;
+	/** A description of what was expected, or null if only one symbol would do. */
+	public final String expected ;
+	/** The one symbol that would do, or -1 if expected describes the choices. */
+	public final int expectedSymbol ;
+	/** The name of the file being analysed. */
+	public final String file ;
+	/** The whole message, if it was given ready made, or null to make it from the rest. */
+	public final String message ;
+
+	/** Creates a diagnostic for a token which is not among the expected ones.
+
+	  @param found The token found.  Its fields are copied, as it may be reused.
+	  @param e A description of what was expected.
+	  @param f The name of the file being analysed.
+	 */
+	public Diagnostic(Token found, String e, String f)
+	{
+		symbol = found.symbol ;
+		text = found.text ;
+		lineNumber = found.lineNumber ;
+		offset = found.offset ;
+		expected = e ;
+		expectedSymbol = -1 ;
+		file = f ;
+		message = null ;
+	} // end of constructor method
+
+	/** Creates a diagnostic for a token which is not the one symbol expected.
+
+	  @param found The token found.  Its fields are copied, as it may be reused.
+	  @param s The symbol expected, as a class constant from Token.
+	  @param f The name of the file being analysed.
+	 */
+	public Diagnostic(Token found, int s, String f)
+	{
+		symbol = found.symbol ;
+		text = found.text ;
+		lineNumber = found.lineNumber ;
+		offset = found.offset ;
+		expected = null ;
+		expectedSymbol = s ;
+		file = f ;
+		message = null ;
+	} // end of constructor method
+
+	/** Creates a diagnostic with a message given in full; see described(). */
+	private Diagnostic(String m, Token found, String f)
+	{
+		symbol = found.symbol ;
+		text = found.text ;
+		lineNumber = found.lineNumber ;
+		offset = found.offset ;
+		expected = null ;
+		expectedSymbol = -1 ;
+		file = f ;
+		message = m ;
+	} // end of constructor method
+
+	/** Creates a diagnostic for an error already described in words, as
+	  reported through AbstractGenerate.reportError(Token, String).
+
+	  @param found The token the error was found at.  Its fields are copied.
+	  @param m The whole message.
+	  @param f The name of the file being analysed.
+	  @return the diagnostic.
+	 */
+	public static Diagnostic described(Token found, String m, String f)
+	{
+		return new Diagnostic(m, found, f) ;
+	} // end of method described
+
+	/** @return the message describing this error. */
+	public String getMessage()
+	{
+		if (message != null)
+			return message ;
+		if (expected == null)
+			return "line number " + lineNumber + " in " + file + ": token (" + Token.getName(symbol) + ").\n" ;
+		else
+			return "line number " + lineNumber + " in " + file + ":\n\t- Looking for " + expected +
+					" but found (" + Token.getName(symbol) + ").\n" ;
+	} // end of method getMessage
+
+	/** @see Object.toString */
+	public String toString()
+	{
+		return getMessage() ;
+	} // end of method toString
+} // end of class Diagnostic
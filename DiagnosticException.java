@@ -0,0 +1,40 @@
+/**
+ *
+ * A compilation exception carrying a structured Diagnostic.  It records no
+ * stack trace and formats its message only when asked, so reporting and
+ * re-reporting an error as the parser unwinds costs a couple of small
+ * allocations per level.
+ *
+ **/
+
+public class DiagnosticException extends CompilationException
+{
+	private static final long serialVersionUID = 1L ;
+
+	/** The error this exception reports. */
+	private final Diagnostic diagnostic ;
+
+	public DiagnosticException( Diagnostic diagnostic ) {
+		this( diagnostic, null );
+	}
+
+	public DiagnosticException( Diagnostic diagnostic, CompilationException cause ) {
+		super( null, cause );
+		this.diagnostic = diagnostic;
+	}
+
+	public Diagnostic getDiagnostic() {
+		return diagnostic;
+	}
+
+	@Override
+	public String getMessage() {
+		return diagnostic.getMessage();
+	}
+
+	/** Skips recording the stack, which is never printed. */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+} // end of class DiagnosticException
@@ -0,0 +1,142 @@
+/**
+ *
+ * Event log for 254 exercise.
+ *
+ * Records parse events as one int each, to be sent on later with
+ * writeEvents(): a terminal as the index of its token in a TokenBuffer, and
+ * the start or finish of a nonterminal as a negative number made from its
+ * Nonterminal number.  Like a SyntaxTree sharing its tokens, the log assumes
+ * the parse accepts the buffer's tokens in order from a given one.
+ *
+ * A log can be used again: restart() begins a new run of events after those
+ * already recorded, so one log can hold the events of several parses, each
+ * sent on by its own range, and clear() empties it.
+ *
+ **/
+
+public class EventLog implements EventSink
+{
+	/** The events, in order. */
+	private int[] events = new int[256] ;
+	/** The number of events recorded. */
+	private int size ;
+
+	/** The tokens being parsed. */
+	private final TokenBuffer tokens ;
+	/** The index in tokens of the next terminal. */
+	private int nextToken ;
+	/** The number of nonterminals commenced. */
+	private int nonterminals ;
+
+	/** Creates an empty log for a parse starting at a given token.
+
+	  @param tokens The tokens being parsed.
+	  @param first The index in tokens of the first token to be parsed.
+	 */
+	public EventLog(TokenBuffer tokens, int first)
+	{
+		this.tokens = tokens ;
+		nextToken = first ;
+	} // end of constructor method
+
+	/** @return the number of events recorded. */
+	public int size()
+	{
+		return size ;
+	} // end of method size
+
+	/** @return the number of nonterminals commenced. */
+	public int nonterminals()
+	{
+		return nonterminals ;
+	} // end of method nonterminals
+
+	/** Begins a new run of events, keeping those already recorded.
+
+	  @param first The index in tokens of the first token the next parse accepts.
+	 */
+	public void restart(int first)
+	{
+		nextToken = first ;
+	} // end of method restart
+
+	/** Throws away every event recorded, keeping the space they took. */
+	public void clear()
+	{
+		size = 0 ;
+		nonterminals = 0 ;
+	} // end of method clear
+
+	/** Sends every event recorded to a sink, in order.  The text of each
+	  terminal comes from the given buffer, which must hold the same tokens
+	  as the one the log was made with.
+
+	  @param sink Where to send the events.
+	  @param t The tokens to take the terminals' text from.
+	 */
+	public void writeEvents(EventSink sink, TokenBuffer t)
+	{
+		writeEvents(sink, t, 0, size) ;
+	} // end of method writeEvents
+
+	/** Sends a range of the events recorded to a sink, in order, as
+	  writeEvents(EventSink, TokenBuffer) does.
+
+	  @param sink Where to send the events.
+	  @param t The tokens to take the terminals' text from.
+	  @param from The first event to send, as size() gave it before the run.
+	  @param to The event after the last one to send.
+	 */
+	public void writeEvents(EventSink sink, TokenBuffer t, int from, int to)
+	{
+		for (int i = from ; i < to ; i++)
+		{
+			int e = events[i] ;
+			if (e >= 0)
+				sink.insertTerminal(t.kind(e), t.text(e), t.line(e)) ;
+			else if ((e & 1) != 0)
+				sink.commenceNonterminal(Nonterminal.getName(-(e + 1) >> 1)) ;
+			else
+				sink.finishNonterminal(Nonterminal.getName(-(e + 2) >> 1)) ;
+		}
+	} // end of method writeEvents
+
+	private void add(int e)
+	{
+		if (size == events.length)
+		{
+			int[] larger = new int[size * 2] ;
+			System.arraycopy(events, 0, larger, 0, size) ;
+			events = larger ;
+		}
+		events[size++] = e ;
+	} // end of method add
+
+	public void insertTerminal(int symbol, CharSequence text, int lineNumber)
+	{
+		add(nextToken++) ;
+	} // end of method insertTerminal
+
+	public void commenceNonterminal(String name)
+	{
+		nonterminals++ ;
+		add(-2 * Nonterminal.getId(name) - 1) ;
+	} // end of method commenceNonterminal
+
+	public void finishNonterminal(String name)
+	{
+		add(-2 * Nonterminal.getId(name) - 2) ;
+	} // end of method finishNonterminal
+
+	public void reportSuccess()
+	{
+	} // end of method reportSuccess
+
+	public void flush()
+	{
+	} // end of method flush
+
+	public void close()
+	{
+	} // end of method close
+} // end of class EventLog
@@ -0,0 +1,31 @@
+/**
+ *
+ * Event sink for 254 exercise.  Receives the parse events passed to an
+ * AbstractGenerate and writes them out in some form.
+ *
+ **/
+
+import java.io.IOException;
+
+public interface EventSink
+{
+    /** A terminal was accepted.  The text may be a view that changes once the
+        analyser advances, so it must not be kept. */
+    void insertTerminal( int symbol, CharSequence text, int lineNumber );
+
+    /** A nonterminal was started. */
+    void commenceNonterminal( String name );
+
+    /** A nonterminal was finished. */
+    void finishNonterminal( String name );
+
+    /** The whole source was parsed without error. */
+    void reportSuccess();
+
+    /** Writes out everything received so far. */
+    void flush() throws IOException;
+
+    /** Flushes and releases the sink; it may not be used afterwards. */
+    void close() throws IOException;
+
+} // end of interface EventSink
@@ -2,21 +2,25 @@
  * Copyright (c) 22/2/2018 This class was created by Orber J.
  */
 
-import java.io.*;
 public class Generate extends AbstractGenerate {
-    private StringWriter errors = new StringWriter();
     public Generate() {
         // Constructor
     }
 
+    /**
+     * Reports an error described in words, as a Diagnostic carrying the message as given
+     */
     @Override
     public void reportError(Token token, String explanatoryMessage) throws CompilationException{
-        printStackTrace(explanatoryMessage, new CompilationException(explanatoryMessage));
+        reportError(Diagnostic.described(token, explanatoryMessage, sourceName), null);
     }
 
-    public void printStackTrace(String explanatoryMessage, CompilationException exception) throws CompilationException{
-        String message = explanatoryMessage + "\tStack Trace:\t"+ errors + "\t";
-        exception.printStackTrace(new PrintWriter(errors));
-        throw new CompilationException(message);
+    /**
+     * Reports a structured diagnostic by throwing it, chained to the error being handled,
+     * without recording a stack trace or formatting anything until it is printed
+     */
+    @Override
+    public void reportError(Diagnostic diagnostic, CompilationException cause) throws CompilationException {
+        throw new DiagnosticException(diagnostic, cause);
     }
 }
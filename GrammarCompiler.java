@@ -0,0 +1,499 @@
+/**
+ *
+ * Grammar compiler for 254 exercise.
+ *
+ * Reads a grammar written as described in SyntaxAnalyser.grammar, checks that
+ * it is LL(1), and writes the parse tables for TableSyntaxAnalyser as a Java
+ * source file.  The makefile runs it whenever the grammar changes:
+ *
+ *     java GrammarCompiler SyntaxAnalyser.grammar ParseTable.java
+ *
+ * Terminals are named by their Token constants, which are looked up by
+ * reflection, so Token must be compiled first.
+ *
+ **/
+
+import java.io.* ;
+import java.lang.reflect.Field ;
+import java.lang.reflect.Modifier ;
+import java.nio.file.Files ;
+import java.nio.file.Paths ;
+import java.util.* ;
+
+public class GrammarCompiler
+{
+	/** One nonterminal, as declared. */
+	private static class Rule
+	{
+		String name ;
+		boolean hidden, recover ;
+		String catchMessage, expectMessage ;
+		/** The alternatives, each a list of items. */
+		List<List<Item>> alternatives = new ArrayList<List<Item>>() ;
+	} // end of class Rule
+
+	/** One item of an alternative. */
+	private static class Item
+	{
+		/** '<' for a nonterminal, '@' for an action, 't' for a terminal. */
+		char kind ;
+		String name ;
+		/** The message explaining errors passing out through the item; null for none. */
+		String message ;
+		int line ;
+	} // end of class Item
+
+	/* The grammar text and where reading has got to. */
+	private final String text ;
+	private int position, line = 1 ;
+
+	private final List<Rule> rules = new ArrayList<Rule>() ;
+	private final Map<String, Integer> ruleNumbers = new HashMap<String, Integer>() ;
+	private final Map<String, Integer> terminals = new TreeMap<String, Integer>() ;
+	private final List<String> actions = new ArrayList<String>() ;
+	private final List<String> messages = new ArrayList<String>() ;
+	private int terminalCount ;
+
+	private GrammarCompiler(String text)
+	{
+		this.text = text ;
+		for (Field f : Token.class.getFields())
+			if (Modifier.isStatic(f.getModifiers()) && (f.getType() == int.class))
+			{
+				try
+				{
+					int value = f.getInt(null) ;
+					terminals.put(f.getName(), value) ;
+					terminalCount = Math.max(terminalCount, value + 1) ;
+				}
+				catch (IllegalAccessException e)
+				{
+					throw new IllegalStateException(e) ;
+				}
+			}
+	} // end of constructor method
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 2)
+		{
+			System.err.println("usage: java GrammarCompiler grammar-file java-file") ;
+			System.exit(2) ;
+		}
+		GrammarCompiler g = new GrammarCompiler(new String(Files.readAllBytes(Paths.get(args[0])))) ;
+		try
+		{
+			g.read() ;
+			String tables = g.compile(new File(args[0]).getName()) ;
+			Files.write(Paths.get(args[1]), tables.getBytes()) ;
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(args[0] + ":" + e.getMessage()) ;
+			System.exit(1) ;
+		}
+	} // end of main method
+
+	/* Reading the grammar */
+
+	private void read()
+	{
+		while (!atEnd())
+		{
+			Rule r = new Rule() ;
+			r.name = nonterminalName() ;
+			if (ruleNumbers.containsKey(r.name))
+				throw error(r.name + " is declared twice") ;
+			while (true)
+			{
+				String word = peekWord() ;
+				if (word.equals("hidden"))
+					r.hidden = true ;
+				else if (word.equals("recover"))
+					r.recover = true ;
+				else if (word.equals("catch"))
+				{
+					word() ;
+					r.catchMessage = quoted() ;
+					continue ;
+				}
+				else if (word.equals("expect"))
+				{
+					word() ;
+					r.expectMessage = quoted() ;
+					continue ;
+				}
+				else
+					break ;
+				word() ;
+			}
+			expect('=') ;
+
+			List<Item> alternative = new ArrayList<Item>() ;
+			while (true)
+			{
+				char c = peek() ;
+				if (c == ';')
+				{
+					position++ ;
+					r.alternatives.add(alternative) ;
+					break ;
+				}
+				else if (c == '|')
+				{
+					position++ ;
+					r.alternatives.add(alternative) ;
+					alternative = new ArrayList<Item>() ;
+				}
+				else
+					alternative.add(item(r)) ;
+			}
+			ruleNumbers.put(r.name, rules.size()) ;
+			rules.add(r) ;
+		}
+	} // end of method read
+
+	private Item item(Rule r)
+	{
+		Item i = new Item() ;
+		i.line = line ;
+		char c = peek() ;
+		if (c == '<')
+		{
+			i.kind = '<' ;
+			i.name = nonterminalName() ;
+		}
+		else if (c == '@')
+		{
+			position++ ;
+			i.kind = '@' ;
+			i.name = word() ;
+		}
+		else
+		{
+			i.kind = 't' ;
+			i.name = word() ;
+			if (!terminals.containsKey(i.name))
+				throw error(i.name + " is not a Token constant") ;
+		}
+
+		i.message = r.catchMessage ;
+		if ((position < text.length()) && (text.charAt(position) == '!'))
+		{
+			position++ ;
+			i.message = null ;
+		}
+		else if ((position < text.length()) && (text.charAt(position) == '{'))
+		{
+			position++ ;
+			i.message = quoted() ;
+			expect('}') ;
+		}
+		return i ;
+	} // end of method item
+
+	private String nonterminalName()
+	{
+		expect('<') ;
+		int end = text.indexOf('>', position) ;
+		if (!onThisLine(end))
+			throw error("unterminated nonterminal name") ;
+		String name = text.substring(position - 1, end + 1) ;
+		position = end + 1 ;
+		return name ;
+	} // end of method nonterminalName
+
+	private String quoted()
+	{
+		expect('"') ;
+		int end = text.indexOf('"', position) ;
+		if (!onThisLine(end))
+			throw error("unterminated message") ;
+		String s = text.substring(position, end) ;
+		position = end + 1 ;
+		return s ;
+	} // end of method quoted
+
+	/** @return true if a position found by searching is on the current line. */
+	private boolean onThisLine(int end)
+	{
+		int newLine = text.indexOf('\n', position) ;
+		return (end >= 0) && ((newLine < 0) || (end < newLine)) ;
+	} // end of method onThisLine
+
+	private String peekWord()
+	{
+		int save = position, saveLine = line ;
+		String w = Character.isJavaIdentifierStart(peek()) ? word() : "" ;
+		position = save ;
+		line = saveLine ;
+		return w ;
+	} // end of method peekWord
+
+	private String word()
+	{
+		peek() ;
+		int start = position ;
+		while ((position < text.length()) && Character.isJavaIdentifierPart(text.charAt(position)))
+			position++ ;
+		if (start == position)
+			throw error("unexpected '" + text.charAt(position) + "'") ;
+		return text.substring(start, position) ;
+	} // end of method word
+
+	private void expect(char c)
+	{
+		if (peek() != c)
+			throw error("expected '" + c + "'") ;
+		position++ ;
+	} // end of method expect
+
+	/** Skips white space and comments.
+	  @return the next character, or 0 at the end. */
+	private char peek()
+	{
+		while (position < text.length())
+		{
+			char c = text.charAt(position) ;
+			if (c == '#')
+				while ((position < text.length()) && (text.charAt(position) != '\n'))
+					position++ ;
+			else if (Character.isWhitespace(c))
+			{
+				if (c == '\n')
+					line++ ;
+				position++ ;
+			}
+			else
+				return c ;
+		}
+		return 0 ;
+	} // end of method peek
+
+	private boolean atEnd()
+	{
+		return peek() == 0 ;
+	} // end of method atEnd
+
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException(line + ": " + message) ;
+	} // end of method error
+
+	/* Building the tables */
+
+	/** Works out the tables and writes them as Java.
+
+	  @param source The name of the grammar file, for the header comment.
+	  @return the Java source.
+	 */
+	private String compile(String source)
+	{
+		int n = rules.size() ;
+		for (Rule r : rules)
+			for (List<Item> a : r.alternatives)
+				for (Item i : a)
+					if ((i.kind == '<') && !ruleNumbers.containsKey(i.name))
+						throw new IllegalArgumentException(i.line + ": " + i.name + " is not declared") ;
+					else if ((i.kind == '@') && !actions.contains(i.name))
+						actions.add(i.name) ;
+
+		// which nonterminals can be empty, and which terminals each can start with
+		boolean[] nullable = new boolean[n] ;
+		BitSet[] first = new BitSet[n] ;
+		for (int r = 0 ; r < n ; r++)
+			first[r] = new BitSet() ;
+		boolean changed = true ;
+		while (changed)
+		{
+			changed = false ;
+			for (int r = 0 ; r < n ; r++)
+				for (List<Item> a : rules.get(r).alternatives)
+				{
+					BitSet f = new BitSet() ;
+					boolean empty = firstOf(a, nullable, first, f) ;
+					if (!isSubset(f, first[r]))
+					{
+						first[r].or(f) ;
+						changed = true ;
+					}
+					if (empty && !nullable[r])
+					{
+						nullable[r] = true ;
+						changed = true ;
+					}
+				}
+		}
+
+		// the parse table: the production for each nonterminal and next token
+		int[][] table = new int[n][terminalCount] ;
+		int production = 0 ;
+		for (int r = 0 ; r < n ; r++)
+		{
+			Rule rule = rules.get(r) ;
+			Arrays.fill(table[r], -1) ;
+			int count = rule.alternatives.size() ;
+			for (int a = 0 ; a < count ; a++)
+			{
+				BitSet f = new BitSet() ;
+				boolean empty = firstOf(rule.alternatives.get(a), nullable, first, f) ;
+				if (empty && (a < count - 1))
+					throw new IllegalArgumentException(rule.name + ": only the last alternative may be empty") ;
+				for (int t = f.nextSetBit(0) ; t >= 0 ; t = f.nextSetBit(t + 1))
+				{
+					if (table[r][t] >= 0)
+						throw new IllegalArgumentException(rule.name + ": not LL(1), two alternatives start with "
+								+ Token.getName(t)) ;
+					table[r][t] = production + a ;
+				}
+			}
+			if (rule.expectMessage == null)
+				for (int t = 0 ; t < terminalCount ; t++)
+					if (table[r][t] < 0)
+						table[r][t] = production + count - 1 ;
+			production += count ;
+		}
+
+		return write(source, table) ;
+	} // end of method compile
+
+	/** Works out the terminals an alternative can start with.
+
+	  @return true if the alternative can be empty.
+	 */
+	private boolean firstOf(List<Item> alternative, boolean[] nullable, BitSet[] first, BitSet into)
+	{
+		for (Item i : alternative)
+		{
+			if (i.kind == 't')
+			{
+				into.set(terminals.get(i.name)) ;
+				return false ;
+			}
+			else if (i.kind == '<')
+			{
+				int r = ruleNumbers.get(i.name) ;
+				into.or(first[r]) ;
+				if (!nullable[r])
+					return false ;
+			}
+		}
+		return true ;
+	} // end of method firstOf
+
+	private static boolean isSubset(BitSet a, BitSet b)
+	{
+		BitSet c = (BitSet) a.clone() ;
+		c.andNot(b) ;
+		return c.isEmpty() ;
+	} // end of method isSubset
+
+	private int messageNumber(String m)
+	{
+		if (m == null)
+			return -1 ;
+		int i = messages.indexOf(m) ;
+		if (i < 0)
+		{
+			i = messages.size() ;
+			messages.add(m) ;
+		}
+		return i ;
+	} // end of method messageNumber
+
+	private int itemCode(Item i)
+	{
+		if (i.kind == 't')
+			return terminals.get(i.name) ;
+		else if (i.kind == '<')
+			return terminalCount + ruleNumbers.get(i.name) ;
+		else
+			return terminalCount + rules.size() + actions.indexOf(i.name) ;
+	} // end of method itemCode
+
+	private String write(String source, int[][] table)
+	{
+		int n = rules.size() ;
+		StringBuilder items = new StringBuilder(), tags = new StringBuilder() ;
+		for (Rule r : rules)
+			for (List<Item> a : r.alternatives)
+			{
+				items.append("\t\t{") ;
+				tags.append("\t\t{") ;
+				// stored in reverse, the order they are pushed on the parse stack
+				for (int i = a.size() - 1 ; i >= 0 ; i--)
+				{
+					items.append(' ').append(itemCode(a.get(i))).append(i > 0 ? "," : " ") ;
+					tags.append(' ').append(messageNumber(a.get(i).message)).append(i > 0 ? "," : " ") ;
+				}
+				items.append("},\n") ;
+				tags.append("},\n") ;
+			}
+
+		StringBuilder s = new StringBuilder() ;
+		s.append("/**\n *\n * Parse tables for TableSyntaxAnalyser, made from ").append(source)
+				.append(" by GrammarCompiler.\n * Do not edit: change the grammar and run make.\n *\n **/\n\n") ;
+		s.append("final class ParseTable\n{\n") ;
+		s.append("\tstatic final int terminalCount = ").append(terminalCount).append(" ;\n") ;
+		s.append("\tstatic final int nonterminalCount = ").append(n).append(" ;\n") ;
+		s.append("\t/** The nonterminal the whole source is. */\n") ;
+		s.append("\tstatic final int start = 0 ;\n\n") ;
+		s.append("\t/* The item codes of the actions. */\n") ;
+		for (int a = 0 ; a < actions.size() ; a++)
+			s.append("\tstatic final int ").append(actions.get(a)).append(" = ")
+					.append(terminalCount + n + a).append(" ;\n") ;
+
+		s.append("\n\t/** The name of each nonterminal, or null if it is hidden. */\n") ;
+		s.append("\tstatic final String[] names =\n\t{\n") ;
+		for (Rule r : rules)
+			s.append("\t\t").append(r.hidden ? "null" : quote(r.name)).append(",\n") ;
+		s.append("\t} ;\n\n") ;
+
+		s.append("\t/** Is each nonterminal where errors are recovered from? */\n") ;
+		s.append("\tstatic final boolean[] recovers =\n\t{\n\t\t") ;
+		for (Rule r : rules)
+			s.append(r.recover).append(", ") ;
+		s.append("\n\t} ;\n\n") ;
+
+		s.append("\t/** The message of each nonterminal for errors in choosing an alternative, or -1. */\n") ;
+		s.append("\tstatic final int[] catchMessages =\n\t{\n\t\t") ;
+		for (Rule r : rules)
+			s.append(messageNumber(r.catchMessage)).append(", ") ;
+		s.append("\n\t} ;\n\n") ;
+
+		s.append("\t/** The message of each nonterminal for a token that starts no alternative, or -1. */\n") ;
+		s.append("\tstatic final int[] expectMessages =\n\t{\n\t\t") ;
+		for (Rule r : rules)
+			s.append(messageNumber(r.expectMessage)).append(", ") ;
+		s.append("\n\t} ;\n\n") ;
+
+		s.append("\t/** The production for each nonterminal and next token, or -1 for an error. */\n") ;
+		s.append("\tstatic final int[][] table =\n\t{\n") ;
+		for (int r = 0 ; r < n ; r++)
+		{
+			s.append("\t\t{") ;
+			for (int t = 0 ; t < terminalCount ; t++)
+				s.append(t == 0 ? " " : ", ").append(table[r][t]) ;
+			s.append(" }, // ").append(rules.get(r).name).append('\n') ;
+		}
+		s.append("\t} ;\n\n") ;
+
+		s.append("\t/** The items of each production, last first: terminals are Token symbols, then come\n") ;
+		s.append("\t  nonterminals from terminalCount, then actions. */\n") ;
+		s.append("\tstatic final int[][] items =\n\t{\n").append(items).append("\t} ;\n\n") ;
+		s.append("\t/** The message explaining errors passing out through each item, or -1. */\n") ;
+		s.append("\tstatic final int[][] tags =\n\t{\n").append(tags).append("\t} ;\n\n") ;
+
+		s.append("\tstatic final String[] messages =\n\t{\n") ;
+		for (String m : messages)
+			s.append("\t\t").append(quote(m)).append(",\n") ;
+		s.append("\t} ;\n") ;
+		s.append("} // end of class ParseTable\n") ;
+		return s.toString() ;
+	} // end of method write
+
+	private static String quote(String s)
+	{
+		return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"' ;
+	} // end of method quote
+} // end of class GrammarCompiler
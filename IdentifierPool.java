@@ -0,0 +1,207 @@
+/**
+ *
+ * Identifier intern pool for 254 exercise.
+ *
+ * Maps the text of each distinct identifier to a small, dense int id and one
+ * shared String, so that repeated identifiers neither allocate again nor need
+ * comparing with String.equals.  A single pool is safe to share between
+ * analysers on any number of threads: the table is split into independently
+ * locked stripes, so threads only contend when they hit the same stripe.
+ *
+ **/
+
+public class IdentifierPool
+{
+	/** The number of independently locked stripes; a power of two. */
+	private static final int stripeCount = 64 ;
+
+	/** The pool shared by every LexicalAnalyser unless it is given its own. */
+	private static final IdentifierPool sharedPool = new IdentifierPool() ;
+
+	/** One independently locked part of the table, using open addressing. */
+	private static class Stripe
+	{
+		String[] keys = new String[16] ;
+		int[] hashes = new int[16] ;
+		int[] ids = new int[16] ;
+		int count ;
+	} // end of class Stripe
+
+	private final Stripe[] stripes = new Stripe[stripeCount] ;
+
+	/** The text of each id, indexed by id.  Guarded by namesLock for writing;
+	  an id is only ever handed out after its text is stored. */
+	private volatile String[] names = new String[256] ;
+	private int noOfNames ;
+	private final Object namesLock = new Object() ;
+
+	/** Creates an empty pool. */
+	public IdentifierPool()
+	{
+		for (int i = 0 ; i < stripeCount ; i++)
+			stripes[i] = new Stripe() ;
+	} // end of constructor method
+
+	/** @return the pool shared across the whole JVM. */
+	public static IdentifierPool shared()
+	{
+		return sharedPool ;
+	} // end of method shared
+
+	/** Returns the id of some identifier text, adding it to the pool if it is
+	  new.  Nothing is allocated when the text is already in the pool.
+
+	  @param t A buffer holding the text.
+	  @param offset Where the text starts in t.
+	  @param length The length of the text.
+	  @return the id of the text.
+	 */
+	public int intern(char[] t, int offset, int length)
+	{
+		int h = 0 ;
+		for (int i = 0 ; i < length ; i++)
+			h = 31 * h + t[offset + i] ;
+
+		int spread = h ^ (h >>> 16) ;
+		Stripe stripe = stripes[spread & (stripeCount - 1)] ;
+		synchronized (stripe)
+		{
+			int mask = stripe.keys.length - 1 ;
+			int slot = (spread >>> 6) & mask ;
+			String key ;
+			while ((key = stripe.keys[slot]) != null)
+			{
+				if ((stripe.hashes[slot] == h) && sameText(key, t, offset, length))
+					return stripe.ids[slot] ;
+				slot = (slot + 1) & mask ;
+			}
+
+			String name = new String(t, offset, length) ;
+			int id = addName(name) ;
+			stripe.keys[slot] = name ;
+			stripe.hashes[slot] = h ;
+			stripe.ids[slot] = id ;
+			stripe.count++ ;
+			if (stripe.count * 2 > stripe.keys.length)
+				grow(stripe) ;
+			return id ;
+		}
+	} // end of method intern
+
+	/** Returns the id of some identifier text, adding it to the pool if it is new.
+
+	  @param t The text.
+	  @return the id of the text.
+	 */
+	public int intern(String t)
+	{
+		return intern(t.toCharArray(), 0, t.length()) ;
+	} // end of method intern
+
+	/** Returns the shared text of an id.  The id must have come from this pool.
+
+	  @param id An identifier id.
+	  @return the text it stands for.
+	 */
+	public String name(int id)
+	{
+		return names[id] ;
+	} // end of method name
+
+	/** @return the number of distinct identifiers in the pool. */
+	public int size()
+	{
+		synchronized (namesLock)
+		{
+			return noOfNames ;
+		}
+	} // end of method size
+
+	/** Empties the pool, giving back the space it took, so that a pool kept
+	  for a run of unrelated programs holds only the identifiers of one.  The
+	  ids and Strings already handed out mean nothing afterwards, and no
+	  analyser may be interning into the pool while it is cleared.
+	 */
+	public void clear()
+	{
+		for (Stripe stripe : stripes)
+			synchronized (stripe)
+			{
+				stripe.keys = new String[16] ;
+				stripe.hashes = new int[16] ;
+				stripe.ids = new int[16] ;
+				stripe.count = 0 ;
+			}
+		synchronized (namesLock)
+		{
+			names = new String[256] ;
+			noOfNames = 0 ;
+		}
+	} // end of method clear
+
+	/** Gives a new name the next id.
+
+	  @param name The text to add.
+	  @return its id.
+	 */
+	private int addName(String name)
+	{
+		synchronized (namesLock)
+		{
+			String[] n = names ;
+			if (noOfNames == n.length)
+			{
+				String[] larger = new String[n.length * 2] ;
+				System.arraycopy(n, 0, larger, 0, noOfNames) ;
+				n = larger ;
+			}
+			n[noOfNames] = name ;
+			names = n ;
+			return noOfNames++ ;
+		}
+	} // end of method addName
+
+	/** Doubles the size of a stripe's table, which must be locked.
+
+	  @param stripe The stripe to grow.
+	 */
+	private static void grow(Stripe stripe)
+	{
+		String[] oldKeys = stripe.keys ;
+		int[] oldHashes = stripe.hashes, oldIds = stripe.ids ;
+		int size = oldKeys.length * 2, mask = size - 1 ;
+		stripe.keys = new String[size] ;
+		stripe.hashes = new int[size] ;
+		stripe.ids = new int[size] ;
+		for (int i = 0 ; i < oldKeys.length ; i++)
+		{
+			if (oldKeys[i] == null)
+				continue ;
+			int h = oldHashes[i] ;
+			int slot = ((h ^ (h >>> 16)) >>> 6) & mask ;
+			while (stripe.keys[slot] != null)
+				slot = (slot + 1) & mask ;
+			stripe.keys[slot] = oldKeys[i] ;
+			stripe.hashes[slot] = h ;
+			stripe.ids[slot] = oldIds[i] ;
+		}
+	} // end of method grow
+
+	/** Does a String hold exactly the given characters?
+
+	  @param key The String.
+	  @param t A buffer holding the characters.
+	  @param offset Where they start in t.
+	  @param length How many there are.
+	  @return true if they are the same.
+	 */
+	private static boolean sameText(String key, char[] t, int offset, int length)
+	{
+		if (key.length() != length)
+			return false ;
+		for (int i = 0 ; i < length ; i++)
+			if (key.charAt(i) != t[offset + i])
+				return false ;
+		return true ;
+	} // end of method sameText
+} // end of class IdentifierPool
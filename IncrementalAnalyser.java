@@ -0,0 +1,416 @@
+/**
+ *
+ * Incremental analyser for 254 exercise.
+ *
+ * Keeps a source text, its tokens and its syntax tree in memory, and brings
+ * them up to date after each edit by re-lexing only from the token before the
+ * edit until the new tokens fall back into step with the old ones, and then
+ * re-parsing only the smallest statement or statement list around the tokens
+ * that changed.  Everything else is kept, with its token indexes and line
+ * numbers moved along as needed.
+ *
+ * Line ends in the text are kept as '\n', so offsets given to edit() count
+ * "\r\n" as one character.
+ *
+ * Lexing and parsing are kept to the edit, but the text, the tokens and the
+ * tree are plain arrays, so each edit still makes a few passes over all of
+ * them: the text and the tokens after the edit are moved along, and every
+ * node of the tree is visited to move its token index and to find the one
+ * replaced.  These passes only copy and compare ints, so they stay well
+ * below the cost of parsing the file again, but an edit to a large file
+ * costs time in proportion to the file, not to the edit.
+ *
+ **/
+
+import java.io.* ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.Files ;
+import java.nio.file.Paths ;
+
+public class IncrementalAnalyser
+{
+	/** The name used for the source in error messages. */
+	private final String name ;
+
+	/** The source text, with '\n' line ends. */
+	private char[] text ;
+	private int textLength ;
+
+	/** The tokens of the text, as slices of it. */
+	private TokenBuffer tokens ;
+	/** The syntax tree, whose terminals index into tokens. */
+	private final SyntaxTree tree = new SyntaxTree() ;
+	/** The tree for re-parsing part of the text. */
+	private final SyntaxTree fragment = new SyntaxTree() ;
+	/** The parser, which reads from tokens. */
+	private SyntaxAnalyser syn ;
+
+	/** Did the last full parse find no errors?  Only then is the tree complete. */
+	private boolean wellFormed ;
+	/** The error report from the last full parse. */
+	private String errors = "" ;
+
+	/* What the last edit needed: tokens lexed, and the kind of node re-parsed
+	  (-1 for none, or Nonterminal.statementPart for the whole text). */
+	private int lastTokensLexed,
+			lastReparsed ;
+
+	/** Reads and analyses a file.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be read.
+	 */
+	public IncrementalAnalyser(String fileName) throws IOException
+	{
+		this(new File(fileName).getName(), new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8)) ;
+	} // end of constructor method
+
+	/** Analyses some source text.
+
+	  @param name The name to use for the source in error messages.
+	  @param source The text.
+	  @throws IOException never, in practice, as the text is already in memory.
+	 */
+	public IncrementalAnalyser(String name, CharSequence source) throws IOException
+	{
+		this.name = name ;
+		text = new char[Math.max(16, source.length())] ;
+		textLength = normalise(source, text, 0) ;
+		tokens = new TokenBuffer(text, textLength) ;
+		lex(0, 0, tokens, -1, 0) ;
+		syn = new SyntaxAnalyser(name, tokens) ;
+		parseAll() ;
+	} // end of constructor method
+
+	/** Replaces part of the text and brings the tokens and tree up to date.
+
+	  @param offset Where the edit starts.
+	  @param removedLength How many characters are removed.
+	  @param inserted The text inserted in their place.
+	  @throws IOException never, in practice, as the text is already in memory.
+	 */
+	public void edit(int offset, int removedLength, CharSequence inserted) throws IOException
+	{
+		if ((offset < 0) || (removedLength < 0) || (offset + removedLength > textLength))
+			throw new IndexOutOfBoundsException("edit " + offset + "+" + removedLength + " of " + textLength) ;
+
+		// the new text
+		char[] added = new char[inserted.length()] ;
+		int addedLength = normalise(inserted, added, 0) ;
+		int newLength = textLength - removedLength + addedLength ;
+		char[] newText = (newLength <= text.length) && (addedLength == removedLength)
+				? text : new char[Math.max(newLength, text.length)] ;
+		if (newText != text)
+			System.arraycopy(text, 0, newText, 0, offset) ;
+		System.arraycopy(text, offset + removedLength, newText, offset + addedLength,
+				textLength - offset - removedLength) ;
+		System.arraycopy(added, 0, newText, offset, addedLength) ;
+		int shift = addedLength - removedLength ;
+		int editEnd = offset + addedLength ;
+
+		// re-lex from the last token starting before the edit until back in step
+		int before = lastTokenBefore(offset) ;
+		int restart = Math.max(0, before) ;
+		TokenBuffer relexed = new TokenBuffer(newText, newLength) ;
+		int sync = (before < 0)
+				? lex(0, 0, relexed, editEnd, shift)
+				: lex(extentStart(before), tokens.line(before), relexed, editEnd, shift) ;
+		lastTokensLexed = relexed.size() ;
+
+		// the last token lexed is the same as the old one at sync, which is kept rather than replaced
+		int newCount = relexed.size() - 1 ;
+		int lineShift = relexed.line(newCount) - tokens.line(sync) ;
+
+		// narrow the change down to the tokens that actually differ
+		int first = restart ;
+		while ((first < sync) && (first - restart < newCount) &&
+				sameToken(tokens, first, relexed, first - restart, 0, 0))
+			first++ ;
+		int oldEnd = sync, newEnd = restart + newCount ;
+		while ((oldEnd > first) && (newEnd > first) &&
+				sameToken(tokens, oldEnd - 1, relexed, newEnd - 1 - restart, shift, lineShift))
+		{
+			oldEnd-- ;
+			newEnd-- ;
+		}
+
+		relexed.truncate(newCount) ;
+		tokens.splice(restart, sync, relexed, shift, lineShift, newText, newLength) ;
+		text = newText ;
+		textLength = newLength ;
+
+		if (!wellFormed || (tree.garbage() > tree.size() / 2))
+			parseAll() ;
+		else if ((first == oldEnd) && (first == newEnd))
+			lastReparsed = -1 ;
+		else if (!reparse(first, oldEnd, newEnd - oldEnd))
+			parseAll() ;
+	} // end of method edit
+
+	/** Re-parses the smallest statement or statement list around some changed
+	  tokens, and puts the result into the tree in place of the old one.
+
+	  @param first The first changed token.
+	  @param oldEnd The token after the last changed one, numbered as before the edit.
+	  @param delta How many more tokens there are now.
+	  @return false if no statement or statement list could be re-parsed on its own.
+	  @throws IOException never, in practice.
+	 */
+	private boolean reparse(int first, int oldEnd, int delta) throws IOException
+	{
+		// the tokens which must be inside the node; an insertion between two tokens needs both
+		int low = first, high = oldEnd - 1 ;
+		if (high < low)
+		{
+			low = Math.max(0, first - 1) ;
+			high = first ;
+		}
+
+		int[] candidates = new int[64] ;
+		int count = 0 ;
+		int n = tree.root() ;
+		while (n != SyntaxTree.none)
+		{
+			if ((tree.kind(n) == Nonterminal.statement) || (tree.kind(n) == Nonterminal.statementList))
+			{
+				if (count == candidates.length)
+				{
+					int[] larger = new int[count * 2] ;
+					System.arraycopy(candidates, 0, larger, 0, count) ;
+					candidates = larger ;
+				}
+				candidates[count++] = n ;
+			}
+			int next = SyntaxTree.none ;
+			for (int c = tree.firstChild(n) ; c != SyntaxTree.none ; c = tree.nextSibling(c))
+				if (!tree.isTerminal(c) && covers(c, low, high))
+				{
+					next = c ;
+					break ;
+				}
+			n = next ;
+		}
+
+		for (int i = count - 1 ; i >= 0 ; i--)
+		{
+			int node = candidates[i] ;
+			int from = tree.tokenIndex(tree.firstTerminal(node)) ;
+			int to = tree.tokenIndex(tree.lastTerminal(node)) + delta ;
+			fragment.shareTokens(tokens, from) ;
+			fragment.reset() ;
+			try
+			{
+				if (syn.parseFragment(tree.kind(node), from, fragment) != to + 1)
+					continue ;
+			}
+			catch (CompilationException e)
+			{
+				continue ;
+			}
+			tree.shiftTokens(to - delta + 1, delta) ;
+			tree.replace(node, fragment) ;
+			lastReparsed = tree.kind(node) ;
+			return true ;
+		}
+		return false ;
+	} // end of method reparse
+
+	/** Does a node's run of tokens include the given ones?
+
+	  @param n A nonterminal.
+	  @param low The first token.
+	  @param high The last token.
+	  @return true if the node covers them all.
+	 */
+	private boolean covers(int n, int low, int high)
+	{
+		int f = tree.firstTerminal(n), l = tree.lastTerminal(n) ;
+		return (f != SyntaxTree.none) && (tree.tokenIndex(f) <= low) && (tree.tokenIndex(l) >= high) ;
+	} // end of method covers
+
+	/** Parses the whole text again, from scratch. */
+	private void parseAll() throws IOException
+	{
+		tree.shareTokens(tokens, 0) ;
+		syn.setEventSink(tree) ;
+		tree.reset() ;
+		ByteArrayOutputStream report = new ByteArrayOutputStream() ;
+		PrintStream ps = new PrintStream(report) ;
+		syn.parse(ps, null) ;
+		ps.flush() ;
+		errors = report.toString() ;
+		wellFormed = (report.size() == 0) ;
+		lastReparsed = Nonterminal.statementPart ;
+	} // end of method parseAll
+
+	/** Lexes the text from a given point, adding the tokens to a buffer, until
+	  the end of file or until past a given point the tokens are found to be
+	  the same as the existing ones.
+
+	  @param from Where to start; a token must start there.
+	  @param line The line number at from.
+	  @param into Where to add the tokens.
+	  @param stopAfter Where the tokens may be back in step with the existing ones, or -1 to lex everything.
+	  @param shift How far the existing text has moved at stopAfter.
+	  @return the index of the existing token the last one added is the same as; the old end of file token for the end of file.
+	  @throws IOException never, in practice.
+	 */
+	private int lex(int from, int line, TokenBuffer into, int stopAfter, int shift) throws IOException
+	{
+		LexicalAnalyser lex = new LexicalAnalyser(into.chars(), into.textLength(), from, line) ;
+		while (true)
+		{
+			int k = lex.advance() ;
+			int start = lex.offset(), length = lex.text().length() ;
+			if (k == Token.stringConstant)
+				start++ ;
+			length = Math.min(length, into.textLength() - start) ;
+			into.addSlice(k, start, length, lex.line()) ;
+
+			if (k == Token.eofSymbol)
+				return tokens.size() - 1 ;
+			if ((stopAfter >= 0) && (start >= stopAfter))
+			{
+				int old = tokenStartingAt(start - shift, k) ;
+				if (old >= 0)
+					return old ;
+			}
+		}
+	} // end of method lex
+
+	/** @return the index of the last token starting before an offset, or -1. */
+	private int lastTokenBefore(int offset)
+	{
+		int low = 0, high = tokens.size() - 1, found = -1 ;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1 ;
+			if (tokens.start(mid) < offset)
+			{
+				found = mid ;
+				low = mid + 1 ;
+			}
+			else
+				high = mid - 1 ;
+		}
+		return found ;
+	} // end of method lastTokenBefore
+
+	/** @return the index of the existing token of a given kind whose text starts at an offset, or -1. */
+	private int tokenStartingAt(int offset, int k)
+	{
+		for (int i = lastTokenBefore(offset + 1) ; (i >= 0) && (tokens.start(i) == offset) ; i--)
+			if (tokens.kind(i) == k)
+				return i ;
+		return -1 ;
+	} // end of method tokenStartingAt
+
+	/** @return where a token starts in the text, counting a string's opening quote. */
+	private int extentStart(int i)
+	{
+		return (tokens.kind(i) == Token.stringConstant) ? tokens.start(i) - 1 : tokens.start(i) ;
+	} // end of method extentStart
+
+	/** Are two tokens the same, allowing for the second having moved?
+
+	  @return true if they match in kind, position, length and line.
+	 */
+	private static boolean sameToken(TokenBuffer a, int i, TokenBuffer b, int j, int shift, int lineShift)
+	{
+		return (a.kind(i) == b.kind(j)) && (a.start(i) + shift == b.start(j)) &&
+				(a.length(i) == b.length(j)) && (a.line(i) + lineShift == b.line(j)) ;
+	} // end of method sameToken
+
+	/** Copies text, turning "\r\n" and "\r" into '\n'.
+
+	  @param from The text.
+	  @param to Where to copy it; must be long enough.
+	  @param at Where in to to start.
+	  @return the position in to after the copy.
+	 */
+	static int normalise(CharSequence from, char[] to, int at)
+	{
+		for (int i = 0, n = from.length() ; i < n ; i++)
+		{
+			char c = from.charAt(i) ;
+			if (c == '\r')
+			{
+				if ((i + 1 < n) && (from.charAt(i + 1) == '\n'))
+					i++ ;
+				c = '\n' ;
+			}
+			to[at++] = c ;
+		}
+		return at ;
+	} // end of method normalise
+
+	/** Sends the tree to a sink as parse events, as a fresh parse would.
+
+	  @param sink Where to send the events.
+	 */
+	public void writeEvents(EventSink sink)
+	{
+		for (int n = tree.root() ; n != SyntaxTree.none ; n = tree.nextSibling(n))
+			writeEvents(sink, n) ;
+		if (wellFormed)
+			sink.reportSuccess() ;
+	} // end of method writeEvents
+
+	private void writeEvents(EventSink sink, int n)
+	{
+		if (tree.isTerminal(n))
+		{
+			int t = tree.tokenIndex(n) ;
+			sink.insertTerminal(tokens.kind(t), tokens.text(t), tokens.line(t)) ;
+			return ;
+		}
+		String nonterminal = Nonterminal.getName(tree.kind(n)) ;
+		sink.commenceNonterminal(nonterminal) ;
+		for (int c = tree.firstChild(n) ; c != SyntaxTree.none ; c = tree.nextSibling(c))
+			writeEvents(sink, c) ;
+		sink.finishNonterminal(nonterminal) ;
+	} // end of method writeEvents
+
+	/** @return the current text. */
+	public String text()
+	{
+		return new String(text, 0, textLength) ;
+	} // end of method text
+
+	/** @return the tokens of the current text. */
+	public TokenBuffer tokens()
+	{
+		return tokens ;
+	} // end of method tokens
+
+	/** @return the syntax tree of the current text. */
+	public SyntaxTree tree()
+	{
+		return tree ;
+	} // end of method tree
+
+	/** @return true if the current text has no syntax errors. */
+	public boolean isWellFormed()
+	{
+		return wellFormed ;
+	} // end of method isWellFormed
+
+	/** @return the error report for the current text, or "" if there are no errors. */
+	public String getErrors()
+	{
+		return errors ;
+	} // end of method getErrors
+
+	/** @return the number of tokens lexed for the last edit. */
+	public int lastTokensLexed()
+	{
+		return lastTokensLexed ;
+	} // end of method lastTokensLexed
+
+	/** @return the kind of node re-parsed for the last edit: -1 for none,
+	  Nonterminal.statementPart for the whole text. */
+	public int lastReparsed()
+	{
+		return lastReparsed ;
+	} // end of method lastReparsed
+} // end of class IncrementalAnalyser
@@ -10,6 +10,13 @@
  *
  **/
 import java.io.* ;
+import java.nio.ByteOrder ;
+import java.nio.MappedByteBuffer ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.channels.FileChannel ;
+import java.nio.file.Paths ;
+import java.nio.file.StandardOpenOption ;
+import java.util.Arrays ;
 
 public class LexicalAnalyser
 {
@@ -21,6 +28,8 @@ public class LexicalAnalyser
 		public String text ;
 		/** The type (one of the class constants from Token) of this word. */
 		public int symbol ;
+		/** The next reserved word sharing this word's length and first letter. */
+		public ReservedWord next ;
 
 		/** Creates a new reserved word from the observed text and a given type.
 
@@ -44,12 +53,318 @@ public class LexicalAnalyser
 	/** Holds the current number of symbols held. */
 	private int noOfSymbols ;
 
+	/** The longest reserved word the index below can hold. */
+	private static final int maxReservedWordLength = 16 ;
+	/** Reserved words indexed by length and lower-case first letter, so that an
+	  identifier is checked against at most a handful of candidates. */
+	private ReservedWord[] reservedIndex = new ReservedWord[maxReservedWordLength * 26] ;
+
+	/* Character classes.  Every character of the same class takes the scanner
+	   the same way, so the transitions below need only one column for each. */
+	private static final int otherClass = 0, blankClass = 1, newlineClass = 2, letterClass = 3,
+			digitClass = 4, dotClass = 5, quoteClass = 6, colonClass = 7, greaterClass = 8,
+			lessClass = 9, slashClass = 10, equalsClass = 11, minusClass = 12, commaClass = 13,
+			semicolonClass = 14, plusClass = 15, timesClass = 16, leftClass = 17, rightClass = 18,
+			eofClass = 19, classCount = 20 ;
+	/** The class of each ASCII character.  Anything else is classed by classOf(). */
+	private static final byte[] asciiClass = new byte[128] ;
+
+	/* Scanner states.  Each state past start is a token begun but not ended. */
+	private static final int startState = 0, identifierState = 1, numberState = 2, fractionState = 3,
+			stringState = 4, stringEndState = 5, colonState = 6, greaterState = 7, lessState = 8,
+			slashState = 9, minusState = 10, commentState = 11, becomesState = 12,
+			greaterEqualState = 13, lessEqualState = 14, notEqualState = 15, equalState = 16,
+			commaState = 17, semicolonState = 18, plusState = 19, timesState = 20, leftState = 21,
+			rightState = 22, errorState = 23, stateCount = 24 ;
+
+	/* What a transition does, besides changing state: its low five bits are
+	   the next state, and these flags are or-ed in. */
+	/** Take the character into the text of the token. */
+	private static final int appendAction = 1 << 5 ;
+	/** Count the character as a line end. */
+	private static final int lineAction = 1 << 6 ;
+	/** Skip or copy a run of the characters that would keep the scanner in
+	  the next state, a word at a time, before moving on. */
+	private static final int runAction = 1 << 7 ;
+	/** Record the character as a line end that is not counted, as in a string. */
+	private static final int breakAction = 1 << 8 ;
+	/** End the token before the character, instead of moving on. */
+	private static final int acceptAction = 1 << 15 ;
+	private static final int stateMask = appendAction - 1 ;
+
+	/** The transitions, by state and then by character class. */
+	private static final short[] transitions = new short[stateCount * classCount] ;
+	/** The type of token ended in each state, as a class constant from Token. */
+	private static final int[] acceptedSymbol = new int[stateCount] ;
+	/** The fixed spelling of the token ended in each state, or null if its text is scanned. */
+	private static final String[] acceptedText = new String[stateCount] ;
+
+	static
+	{
+		for (int c = 0 ; c < 128 ; c++)
+			asciiClass[c] = (byte) (Character.isLetter(c) ? letterClass
+					: Character.isDigit(c) ? digitClass : otherClass) ;
+		asciiClass[' '] = asciiClass['\t'] = blankClass ;
+		asciiClass['\n'] = newlineClass ;
+		asciiClass['.'] = dotClass ;
+		asciiClass['"'] = quoteClass ;
+		asciiClass[':'] = colonClass ;
+		asciiClass['>'] = greaterClass ;
+		asciiClass['<'] = lessClass ;
+		asciiClass['/'] = slashClass ;
+		asciiClass['='] = equalsClass ;
+		asciiClass['-'] = minusClass ;
+		asciiClass[','] = commaClass ;
+		asciiClass[';'] = semicolonClass ;
+		asciiClass['+'] = plusClass ;
+		asciiClass['*'] = timesClass ;
+		asciiClass['('] = leftClass ;
+		asciiClass[')'] = rightClass ;
+		asciiClass[EOF] = eofClass ;
+
+		// unless a state says otherwise, the token ends before any character
+		Arrays.fill(transitions, (short) acceptAction) ;
+
+		// between tokens: blanks and line ends are skipped; any other
+		// character that cannot start a token is an error token of its own
+		fill(startState, errorState) ;
+		transition(startState, blankClass, startState | runAction) ;
+		transition(startState, newlineClass, startState | lineAction | runAction) ;
+		transition(startState, eofClass, acceptAction) ;
+		accept(startState, Token.eofSymbol, "") ;
+		accept(errorState, Token.errorSymbol, "") ;
+
+		transition(startState, letterClass, identifierState | appendAction) ;
+		transition(identifierState, letterClass, identifierState | appendAction) ;
+		transition(identifierState, digitClass, identifierState | appendAction) ;
+		accept(identifierState, Token.identifier, null) ;
+
+		transition(startState, digitClass, numberState | appendAction) ;
+		transition(numberState, digitClass, numberState | appendAction) ;
+		transition(numberState, dotClass, fractionState | appendAction) ;
+		transition(fractionState, digitClass, fractionState | appendAction) ;
+		accept(numberState, Token.numberConstant, null) ;
+		accept(fractionState, Token.numberConstant, null) ;
+
+		// a string runs to the next quote, taking in line ends without
+		// counting them, or to the end of file
+		transition(startState, quoteClass, stringState | runAction) ;
+		fill(stringState, stringState | appendAction | runAction) ;
+		transition(stringState, newlineClass, stringState | appendAction | breakAction | runAction) ;
+		transition(stringState, quoteClass, stringEndState) ;
+		transition(stringState, eofClass, stringEndState) ;
+		accept(stringEndState, Token.stringConstant, null) ;
+
+		// "--" starts a comment, which runs to the end of the line
+		transition(startState, minusClass, minusState) ;
+		transition(minusState, minusClass, commentState | runAction) ;
+		fill(commentState, commentState | runAction) ;
+		transition(commentState, newlineClass, startState | lineAction | runAction) ;
+		accept(minusState, Token.minusSymbol, "-") ;
+
+		symbol(startState, colonClass, colonState, Token.colonSymbol, ":") ;
+		symbol(colonState, equalsClass, becomesState, Token.becomesSymbol, ":=") ;
+		symbol(startState, greaterClass, greaterState, Token.greaterThanSymbol, ">") ;
+		symbol(greaterState, equalsClass, greaterEqualState, Token.greaterEqualSymbol, ">=") ;
+		symbol(startState, lessClass, lessState, Token.lessThanSymbol, "<") ;
+		symbol(lessState, equalsClass, lessEqualState, Token.lessEqualSymbol, "<=") ;
+		symbol(startState, slashClass, slashState, Token.divideSymbol, "/") ;
+		symbol(slashState, equalsClass, notEqualState, Token.notEqualSymbol, "/=") ;
+		symbol(startState, equalsClass, equalState, Token.equalSymbol, "=") ;
+		symbol(startState, commaClass, commaState, Token.commaSymbol, ",") ;
+		symbol(startState, semicolonClass, semicolonState, Token.semicolonSymbol, ";") ;
+		symbol(startState, plusClass, plusState, Token.plusSymbol, "+") ;
+		symbol(startState, timesClass, timesState, Token.timesSymbol, "*") ;
+		symbol(startState, leftClass, leftState, Token.leftParenthesis, "(") ;
+		symbol(startState, rightClass, rightState, Token.rightParenthesis, ")") ;
+	} // end of static initialiser
+
+	/** Sets the transition from a state on a class of character.
+
+	  @param state The state.
+	  @param c The character class.
+	  @param action The next state, with any action flags.
+	 */
+	private static void transition(int state, int c, int action)
+	{
+		transitions[state * classCount + c] = (short) action ;
+	} // end of method transition
+
+	/** Sets the transition from a state on every class of character.
+
+	  @param state The state.
+	  @param action The next state, with any action flags.
+	 */
+	private static void fill(int state, int action)
+	{
+		for (int c = 0 ; c < classCount ; c++)
+			transition(state, c, action) ;
+	} // end of method fill
+
+	/** Sets the token ended in a state.
+
+	  @param state The state.
+	  @param s The type of symbol, as a class constant from Token.
+	  @param t The fixed spelling of the symbol, or null if its text is scanned.
+	 */
+	private static void accept(int state, int s, String t)
+	{
+		acceptedSymbol[state] = s ;
+		acceptedText[state] = t ;
+	} // end of method accept
+
+	/** Adds a symbol with a fixed spelling, reached from a state on one
+	  class of character.
+
+	  @param from The state before the symbol's last character.
+	  @param c The class of the symbol's last character.
+	  @param state The state once the symbol is read.
+	  @param s The type of symbol, as a class constant from Token.
+	  @param t The spelling of the symbol.
+	 */
+	private static void symbol(int from, int c, int state, int s, String t)
+	{
+		transition(from, c, state) ;
+		accept(state, s, t) ;
+	} // end of method symbol
+
+	/** Classes a character outside ASCII, which can only be part of an
+	  identifier or number, or else an error.
+
+	  @param c The character.
+	  @return its character class.
+	 */
+	private static int classOf(char c)
+	{
+		if (Character.isLetter(c))
+			return letterClass ;
+		else if (Character.isDigit(c))
+			return digitClass ;
+		else
+			return otherClass ;
+	} // end of method classOf
+
+	/* Bytes repeated across a word, for comparing eight bytes at once. */
+	private static final long lowBits = 0x7f7f7f7f7f7f7f7fL, highBits = 0x8080808080808080L,
+			blanks = 0x2020202020202020L, tabs = 0x0909090909090909L, newlines = 0x0a0a0a0a0a0a0a0aL,
+			returns = 0x0d0d0d0d0d0d0d0dL, quotes = 0x2222222222222222L ;
+
+	/** Finds the zero bytes of a word, without the carries between bytes that
+	  would mark false ones after a true one.
+
+	  @param w The word.
+	  @return a word with the top bit set in each byte that is zero in w, and nothing else.
+	 */
+	private static long zeroBytes(long w)
+	{
+		return ~(((w & lowBits) + lowBits) | w | lowBits) ;
+	} // end of method zeroBytes
+
+	/** Skips or copies a run of the mapped source that leaves the scanner in
+	  the same state, eight bytes at a time, leaving mappedOffset at the first
+	  byte that needs the scalar path.  That is a byte that is not a blank
+	  between tokens, a line end in a comment, and in a string a quote, a
+	  line end, NUL or anything that is not ASCII.
+
+	  @param state The state the scanner is in.
+	 */
+	private void skipRun(int state)
+	{
+		int at = mappedOffset, limit = mappedLimit ;
+		// most runs between tokens are a single blank, which a word would only slow
+		if ((at >= limit) || !inRun(state, mappedSource.get(at)))
+			return ;
+		while (at + 8 <= limit)
+		{
+			long w = mappedSource.getLong(at) ;
+			long stop ;
+			if (state == startState)
+				stop = ~(zeroBytes(w ^ blanks) | zeroBytes(w ^ tabs)) & highBits ;
+			else if (state == commentState)
+				stop = zeroBytes(w ^ newlines) | zeroBytes(w ^ returns) ;
+			else
+				stop = zeroBytes(w ^ quotes) | zeroBytes(w ^ newlines) | zeroBytes(w ^ returns) |
+						zeroBytes(w) | (w & highBits) ;
+			if (stop != 0)
+			{
+				at += (bigEndian ? Long.numberOfLeadingZeros(stop) : Long.numberOfTrailingZeros(stop)) >>> 3 ;
+				break ;
+			}
+			at += 8 ;
+		}
+		if (at + 8 > limit)
+			while ((at < limit) && inRun(state, mappedSource.get(at)))
+				at++ ;
+
+		if (state == stringState)
+		{
+			int n = at - mappedOffset ;
+			while (currentTextLength + n > currentText.length)
+			{
+				char[] larger = new char[currentText.length * 2] ;
+				System.arraycopy(currentText, 0, larger, 0, currentTextLength) ;
+				currentText = larger ;
+			}
+			for (int i = mappedOffset ; i < at ; i++)
+				currentText[currentTextLength++] = (char) mappedSource.get(i) ;
+		}
+		mappedOffset = at ;
+	} // end of method skipRun
+
+	/** The scalar test behind skipRun(), for the last few bytes of the source.
+
+	  @param state The state the scanner is in.
+	  @param b A byte of the source.
+	  @return true if skipRun() may pass over b.
+	 */
+	private static boolean inRun(int state, byte b)
+	{
+		if (state == startState)
+			return (b == ' ') || (b == '\t') ;
+		else if (state == commentState)
+			return (b != '\n') && (b != '\r') ;
+		else
+			return (b > 0) && (b != '"') && (b != '\n') && (b != '\r') ;
+	} // end of method inRun
+
 	/** Is this the first time we have been called? */
 	private boolean firstCall ;
 
 	/** An input stream from the filename mentioned above. */
 	private BufferedReader sourceFile ;
 
+	/** The memory-mapped source file, when scanning bytes in place instead of by line. */
+	private MappedByteBuffer mappedSource ;
+	/* Read position and size of the mapped source. */
+	private int mappedOffset,
+			mappedLimit ;
+	/** Has the implicit newline after an unterminated last line been delivered? */
+	private boolean mappedLineEnded ;
+	/** The low surrogate still owed from a decoded supplementary character, or EOF if none. */
+	private char pendingCharacter ;
+
+	/** The source text, when scanning characters already in memory. */
+	private char[] sourceText ;
+	/* Read position and end of the in-memory source. */
+	private int textOffset,
+			textLimit ;
+
+	/** Where currentCharacter is in the source: a byte offset for the mapped
+	  source and a character offset otherwise, where reading line by line
+	  counts each line end as one character.  Line ends and the end of file
+	  count as being where they are found. */
+	private int characterOffset = -1 ;
+	/** How many characters have been read when reading line by line. */
+	private int readerOffset ;
+	/** Where the lines read so far start. */
+	private LineIndex lines ;
+	/** Pass over blanks, comments and strings in the mapped source a word at a time. */
+	private boolean wordScanning ;
+	/** Does the mapped source read words most significant byte first? */
+	private boolean bigEndian ;
+	/** Where the token being scanned starts in the source. */
+	private int scanStart ;
+
 	/* State-change character and offset counts. */
 	private char currentCharacter ;
 	private String currentLine ;
@@ -57,7 +372,51 @@ public class LexicalAnalyser
 			currentLineNumber ;
 
 	/* input buffer */
-	private StringBuffer currentText = new StringBuffer() ;
+	private char[] currentText = new char[64] ;
+	private int currentTextLength ;
+
+	/* The token most recently scanned by advance(). */
+	private int tokenKind,
+			tokenLine,
+			tokenStart,
+			tokenEnd ;
+	/** The shared text of the current token when it has a fixed spelling, or
+	  null when its text is held in currentText. */
+	private String tokenFixedText ;
+	/** For an identifier, the id of its text in the identifier pool; otherwise -1. */
+	private int tokenIdentifierId = -1 ;
+	/** Where identifiers are interned. */
+	private IdentifierPool identifiers = IdentifierPool.shared() ;
+
+	/** The reusable view of currentText handed out by text(). */
+	private final TokenText textView = new TokenText() ;
+
+	/** A read-only view of the text of the current token.  Its contents change
+	  each time the analyser advances, so copy it with toString() to keep it. */
+	private class TokenText implements CharSequence
+	{
+		public int length()
+		{
+			return currentTextLength ;
+		} // end of method length
+
+		public char charAt(int index)
+		{
+			if ((index < 0) || (index >= currentTextLength))
+				throw new IndexOutOfBoundsException("index " + index + ", length " + currentTextLength) ;
+			return currentText[index] ;
+		} // end of method charAt
+
+		public CharSequence subSequence(int start, int end)
+		{
+			return toString().substring(start, end) ;
+		} // end of method subSequence
+
+		public String toString()
+		{
+			return new String(currentText, 0, currentTextLength) ;
+		} // end of method toString
+	} // end of class TokenText
 
 	/** Adds a reserved word to the internal symbol table.
 
@@ -66,10 +425,43 @@ public class LexicalAnalyser
 	 */
 	private void setReservedWord(String t, int s)
 	{
-		symbols[noOfSymbols] = new ReservedWord(t, s) ;
+		ReservedWord word = new ReservedWord(t, s) ;
+		symbols[noOfSymbols] = word ;
 		noOfSymbols++ ;
+
+		int slot = (t.length() - 1) * 26 + (t.charAt(0) - 'a') ;
+		word.next = reservedIndex[slot] ;
+		reservedIndex[slot] = word ;
 	} // end of method setReservedWord
 
+	/** Looks up scanned text in the reserved word index, ignoring case, without
+	  building a String from it.  Reserved words are all lower-case ASCII, so
+	  folding with 0x20 is enough and anything else can never match.
+
+	  @param t The buffer holding a scanned word.
+	  @param length The length of the word.
+	  @return The matching reserved word, or null for an identifier.
+	 */
+	private ReservedWord findReservedWord(char[] t, int length)
+	{
+		if (length > maxReservedWordLength)
+			return null ;
+		int first = t[0] | 0x20 ;
+		if ((first < 'a') || (first > 'z'))
+			return null ;
+
+		for (ReservedWord word = reservedIndex[(length - 1) * 26 + (first - 'a')] ;
+				word != null ; word = word.next)
+		{
+			int i = 1 ;
+			while ((i < length) && ((t[i] | 0x20) == word.text.charAt(i)))
+				i++ ;
+			if (i == length)
+				return word ;
+		}
+		return null ;
+	} // end of method findReservedWord
+
 
 	/** Sets all initial variables and adds the language's reserved words to the symbol table. */
 	private void initialiseScanner()
@@ -100,14 +492,92 @@ public class LexicalAnalyser
 	  @throws IOException if any read errors occur during parsing.
 	 */
 	public LexicalAnalyser(String fileName) throws IOException
+	{
+		this(fileName, false) ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over the given file, either
+	  line by line through a reader or directly over the bytes of a memory-mapped
+	  copy of the file.  Either way the file is read as UTF-8, whatever the
+	  platform's default, and both produce exactly the same tokens.
+
+	  @param fileName The file to read.
+	  @param memoryMapped true to map the file and scan its bytes in place.
+	  @throws IOException if any read errors occur during parsing.
+	 */
+	public LexicalAnalyser(String fileName, boolean memoryMapped) throws IOException
 	{
 		initialiseScanner() ;
 
-		sourceFile = new BufferedReader(new FileReader(fileName)) ;
-		currentLine = sourceFile.readLine() ;
+		if (memoryMapped)
+		{
+			try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+			{
+				long size = channel.size() ;
+				if (size <= Integer.MAX_VALUE)
+				{
+					mappedSource = channel.map(FileChannel.MapMode.READ_ONLY, 0, size) ;
+					mappedLimit = (int) size ;
+				}
+			}
+		}
+
+		if (mappedSource == null)
+		{
+			sourceFile = new BufferedReader(new FileReader(fileName, StandardCharsets.UTF_8)) ;
+			currentLine = sourceFile.readLine() ;
+		}
 		currentOffset = 0 ;
+		mappedOffset = 0 ;
+		setWordScanning(true) ;
 		firstCall = true ;
 		currentLineNumber = 0 ;
+		lines = new LineIndex(0, 0) ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over text already in
+	  memory, starting part of the way through it.  The text must use '\n' for
+	  its line ends, and scanning must start where a token could start, that
+	  is, not inside a string or comment.
+
+	  @param text The source text.
+	  @param length How much of text is source.
+	  @param from Where to start scanning.
+	  @param lineNumber The line number at from.
+	 */
+	public LexicalAnalyser(char[] text, int length, int from, int lineNumber)
+	{
+		initialiseScanner() ;
+
+		sourceText = text ;
+		textOffset = from ;
+		textLimit = length ;
+		firstCall = true ;
+		currentLineNumber = lineNumber ;
+		lines = new LineIndex(lineNumber, from) ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over a memory-mapped file,
+	  starting part of the way through it, as in lexing one file in chunks.
+	  Scanning must start where a token could start; the buffer is only read,
+	  so any number of analysers may share it.
+
+	  @param source The mapped file.
+	  @param length How much of source is the file.
+	  @param from Where to start scanning.
+	  @param lineNumber The line number at from.
+	 */
+	public LexicalAnalyser(MappedByteBuffer source, int length, int from, int lineNumber)
+	{
+		initialiseScanner() ;
+
+		mappedSource = source ;
+		mappedLimit = length ;
+		mappedOffset = from ;
+		setWordScanning(true) ;
+		firstCall = true ;
+		currentLineNumber = lineNumber ;
+		lines = new LineIndex(lineNumber, from) ;
 	} // end of constructor method
 
 	/** Loads the next character of the input into the buffer.
@@ -116,197 +586,414 @@ public class LexicalAnalyser
 	 */
 	private void getNextCharacter() throws IOException
 	{
-		if (currentLine == null)
+		if (sourceText != null)
+			getNextTextCharacter() ;
+		else if (mappedSource != null)
+			getNextMappedCharacter() ;
+		else if (currentLine == null)
+		{
+			characterOffset = readerOffset ;
 			currentCharacter = EOF ;
+		}
 		else if (currentOffset >= currentLine.length())
 		{
 			currentLine = sourceFile.readLine() ;
 			currentOffset = 0 ;
+			characterOffset = readerOffset++ ;
 			currentCharacter = '\n' ;
 		}
 		else
 		{
+			characterOffset = readerOffset++ ;
 			currentCharacter = currentLine.charAt(currentOffset) ;
 			currentOffset++ ;
 		}
 	} // end of method getNextCharacter
 
-	/** Returns the next token from the source file.  Repeatedly calling this
-	  will return each token in the file, and eventually null.
+	/** @return where the character after currentCharacter starts, which for a
+	  line end is after all of it. */
+	private int nextOffset()
+	{
+		if (sourceText != null)
+			return textOffset ;
+		else if (mappedSource != null)
+			return mappedOffset ;
+		else
+			return readerOffset ;
+	} // end of method nextOffset
 
-	  @throws IOException in the event that the file cannot be read.
-	  @return the next token from the source file.
+	/** Loads the next character of the in-memory input into the buffer.  As with
+	  the other sources, an unterminated last line still gets a '\n'.
 	 */
-	public Token getNextToken() throws IOException
+	private void getNextTextCharacter()
 	{
-		if (firstCall)
+		if (textOffset < textLimit)
 		{
-			getNextCharacter() ;
-			firstCall = false ;
+			characterOffset = textOffset ;
+			currentCharacter = sourceText[textOffset++] ;
+			return ;
 		}
 
-		while ((currentCharacter == ' ') || (currentCharacter == '\t') ||
-				(currentCharacter == '\n') || (currentCharacter == '-'))
+		characterOffset = textLimit ;
+		if ((textLimit > 0) && !mappedLineEnded)
 		{
-			if (currentCharacter == '-')
+			mappedLineEnded = true ;
+			if (sourceText[textLimit - 1] != '\n')
 			{
-				getNextCharacter() ;
-				if (currentCharacter == '-')
-				{
-					while (currentCharacter != '\n')
-						getNextCharacter() ;
-				}
-				else
-					return new Token(Token.minusSymbol, "-", currentLineNumber) ;
+				currentCharacter = '\n' ;
+				return ;
 			}
-
-			if (currentCharacter == '\n')
-				currentLineNumber++ ;
-			getNextCharacter() ;
 		}
+		currentCharacter = EOF ;
+	} // end of method getNextTextCharacter
 
-		if (Character.isLetter(currentCharacter))
+	/** Loads the next character of the mapped input into the buffer.  Line ends
+	  (\n, \r or \r\n) are delivered as a single '\n', and an unterminated last
+	  line still gets one, just as readLine() would have split them.  ASCII bytes
+	  are taken as they are; anything else is decoded as UTF-8.
+	 */
+	private void getNextMappedCharacter()
+	{
+		if (pendingCharacter != EOF)
 		{
-			currentText.setLength(0) ;
-			while ((Character.isLetter(currentCharacter)) ||
-					(Character.isDigit(currentCharacter)))
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-
-			int i = 0 ;
-			String t = (new String(currentText)).toLowerCase() ;
-			while ((i < noOfSymbols) &&
-					(!t.equals(symbols[i].text)))
-				i++ ;
-
-			if (i < noOfSymbols)
-				return new Token(symbols[i].symbol, currentText, currentLineNumber) ;
-			else
-				return new Token(Token.identifier, currentText, currentLineNumber) ;
+			currentCharacter = pendingCharacter ;
+			pendingCharacter = EOF ;
+			return ;
 		}
-		else if (Character.isDigit(currentCharacter))
+		characterOffset = mappedOffset ;
+		if (mappedOffset >= mappedLimit)
 		{
-			currentText.setLength(0);
-			while (Character.isDigit(currentCharacter))
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-			if (currentCharacter == '.')
+			if ((mappedLimit > 0) && !mappedLineEnded)
 			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-				while (Character.isDigit(currentCharacter))
+				byte last = mappedSource.get(mappedLimit - 1) ;
+				mappedLineEnded = true ;
+				if ((last != '\n') && (last != '\r'))
 				{
-					currentText.append(currentCharacter) ;
-					getNextCharacter() ;
+					currentCharacter = '\n' ;
+					return ;
 				}
 			}
-			return new Token(Token.numberConstant, currentText, currentLineNumber) ;
-		}
-		else if (currentCharacter == '"')
-		{
-			getNextCharacter() ;
-			currentText.setLength(0) ;
-			while (currentCharacter != '"')
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-			getNextCharacter() ;
-			return new Token(Token.stringConstant, currentText, currentLineNumber) ;
-		}
-		else if (currentCharacter == ':')
-		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.becomesSymbol, ":=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.colonSymbol, ":", currentLineNumber) ;
+			currentCharacter = EOF ;
+			return ;
 		}
-		else if (currentCharacter == '>')
+
+		int b = mappedSource.get(mappedOffset++) ;
+		if (b >= 0)
 		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
+			if (b == '\r')
 			{
-				getNextCharacter() ;
-				return new Token(Token.greaterEqualSymbol, ">=", currentLineNumber) ;
+				if ((mappedOffset < mappedLimit) && (mappedSource.get(mappedOffset) == '\n'))
+					mappedOffset++ ;
+				currentCharacter = '\n' ;
 			}
 			else
-				return new Token(Token.greaterThanSymbol, ">", currentLineNumber) ;
+				currentCharacter = (char) b ;
 		}
-		else if (currentCharacter == '<')
+		else
+			decodeMappedCharacter(b & 0xff) ;
+	} // end of method getNextMappedCharacter
+
+	/** Decodes a multi-byte UTF-8 sequence from the mapped input, whose lead byte
+	  has already been read.  Malformed sequences become U+FFFD, one for each
+	  longest start of a well-formed sequence, as the reader's decoder does:
+	  overlong forms and code points past U+10FFFF are malformed, and so is an
+	  encoded surrogate, which like the reader's decoder takes all its bytes
+	  as one.
+
+	  @param lead The first byte of the sequence.
+	 */
+	private void decodeMappedCharacter(int lead)
+	{
+		// the bounds of the second byte, which rule out the malformed forms
+		int extra, codePoint, low = 0x80, high = 0xbf ;
+		if ((lead >= 0xc2) && (lead <= 0xdf))
 		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.lessEqualSymbol, "<=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.lessThanSymbol, "<", currentLineNumber) ;
+			extra = 1 ;
+			codePoint = lead & 0x1f ;
 		}
-		else if (currentCharacter == '/')
+		else if ((lead & 0xf0) == 0xe0)
 		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.notEqualSymbol, "/=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.divideSymbol, "/", currentLineNumber) ;
+			extra = 2 ;
+			codePoint = lead & 0x0f ;
+			if (lead == 0xe0)
+				low = 0xa0 ;
 		}
-		else if (currentCharacter == '=')
+		else if ((lead >= 0xf0) && (lead <= 0xf4))
 		{
-			getNextCharacter() ;
-			return new Token(Token.equalSymbol, "=", currentLineNumber) ;
+			extra = 3 ;
+			codePoint = lead & 0x07 ;
+			if (lead == 0xf0)
+				low = 0x90 ;
+			else if (lead == 0xf4)
+				high = 0x8f ;
 		}
-		else if (currentCharacter == ',')
+		else
 		{
-			getNextCharacter() ;
-			return new Token(Token.commaSymbol, ",", currentLineNumber) ;
+			currentCharacter = '\uFFFD' ;
+			return ;
 		}
-		else if (currentCharacter == ';')
+
+		while (extra > 0)
 		{
-			getNextCharacter() ;
-			return new Token(Token.semicolonSymbol, ";", currentLineNumber) ;
+			if (mappedOffset >= mappedLimit)
+			{
+				currentCharacter = '\uFFFD' ;
+				return ;
+			}
+			int b = mappedSource.get(mappedOffset) & 0xff ;
+			if ((b < low) || (b > high))
+			{
+				currentCharacter = '\uFFFD' ;
+				return ;
+			}
+			low = 0x80 ;
+			high = 0xbf ;
+			codePoint = (codePoint << 6) | (b & 0x3f) ;
+			mappedOffset++ ;
+			extra-- ;
 		}
-		else if (currentCharacter == '+')
+
+		if ((codePoint >= Character.MIN_SURROGATE) && (codePoint <= Character.MAX_SURROGATE))
+			currentCharacter = '\uFFFD' ;
+		else if (Character.isBmpCodePoint(codePoint))
+			currentCharacter = (char) codePoint ;
+		else
 		{
-			getNextCharacter() ;
-			return new Token(Token.plusSymbol, "+", currentLineNumber) ;
+			currentCharacter = Character.highSurrogate(codePoint) ;
+			pendingCharacter = Character.lowSurrogate(codePoint) ;
 		}
-		else if (currentCharacter == '*')
+	} // end of method decodeMappedCharacter
+
+	/** Appends a character to the text of the current token.
+
+	  @param c The character to append.
+	 */
+	private void appendText(char c)
+	{
+		if (currentTextLength == currentText.length)
 		{
-			getNextCharacter() ;
-			return new Token(Token.timesSymbol, "*", currentLineNumber) ;
+			char[] larger = new char[currentText.length * 2] ;
+			System.arraycopy(currentText, 0, larger, 0, currentTextLength) ;
+			currentText = larger ;
 		}
-		else if (currentCharacter == '(')
+		currentText[currentTextLength++] = c ;
+	} // end of method appendText
+
+	/** Records a token whose text is held in the input buffer.
+
+	  @param s The type of symbol, typically as a class constant from Token.
+	  @return The type of symbol.
+	 */
+	private int scanned(int s)
+	{
+		tokenKind = s ;
+		tokenIdentifierId = -1 ;
+		tokenFixedText = null ;
+		tokenLine = currentLineNumber ;
+		tokenStart = scanStart ;
+		tokenEnd = characterOffset ;
+		return s ;
+	} // end of method scanned
+
+	/** Records a token with a fixed spelling, sharing that spelling rather than
+	  copying it into the input buffer.
+
+	  @param s The type of symbol, typically as a class constant from Token.
+	  @param t The shared text of the symbol.
+	  @return The type of symbol.
+	 */
+	private int scanned(int s, String t)
+	{
+		tokenKind = s ;
+		tokenIdentifierId = -1 ;
+		tokenFixedText = t ;
+		tokenLine = currentLineNumber ;
+		tokenStart = scanStart ;
+		tokenEnd = characterOffset ;
+		return s ;
+	} // end of method scanned
+
+	/** Moves on to the next token in the source file without allocating a Token
+	  for it.  Its details are then available from kind(), line() and text()
+	  until the next call.  Once the end of file is reached every further call
+	  returns Token.eofSymbol again.
+
+	  @throws IOException in the event that the file cannot be read.
+	  @return the type of the new current token, as a class constant from Token.
+	 */
+	public int advance() throws IOException
+	{
+		if (firstCall)
 		{
 			getNextCharacter() ;
-			return new Token(Token.leftParenthesis, "(", currentLineNumber) ;
+			firstCall = false ;
 		}
-		else if (currentCharacter == ')')
+
+		// run the scanner from the start state until a token ends
+		int state = startState ;
+		scanStart = characterOffset ;
+		currentTextLength = 0 ;
+		while (true)
 		{
+			char c = currentCharacter ;
+			int action = transitions[state * classCount + ((c < 128) ? asciiClass[c] : classOf(c))] ;
+			if (action < 0)		// acceptAction, the sign bit of the short
+				break ;
+			if ((action & (appendAction | lineAction | runAction | breakAction)) != 0)
+			{
+				if ((action & appendAction) != 0)
+					appendText(c) ;
+				if ((action & lineAction) != 0)
+				{
+					lines.add(nextOffset()) ;
+					currentLineNumber++ ;
+				}
+				else if ((action & breakAction) != 0)
+					lines.addBreak(nextOffset()) ;
+				// a decoded surrogate pair still owes its second half, which must come first
+				if (wordScanning && ((action & runAction) != 0) && (pendingCharacter == EOF))
+					skipRun(action & stateMask) ;
+			}
 			getNextCharacter() ;
-			return new Token(Token.rightParenthesis, ")", currentLineNumber) ;
+			state = action & stateMask ;
+			if (state == startState)
+				scanStart = characterOffset ;
 		}
-		else if (currentCharacter == EOF)
+
+		if (state != identifierState)
+			return scanned(acceptedSymbol[state], acceptedText[state]) ;
+
+		ReservedWord word = findReservedWord(currentText, currentTextLength) ;
+		if (word == null)
 		{
-			return new Token(Token.eofSymbol, "", currentLineNumber) ;
+			int id = identifiers.intern(currentText, 0, currentTextLength) ;
+			scanned(Token.identifier, identifiers.name(id)) ;
+			tokenIdentifierId = id ;
+			return Token.identifier ;
 		}
+		else if (sameText(word.text))
+			return scanned(word.symbol, word.text) ;
 		else
-		{
-			currentText = new StringBuffer(currentCharacter) ;
-			getNextCharacter() ;		// added 21st January 2005
-			return new Token(Token.errorSymbol, currentText, currentLineNumber) ;
-		}
+			return scanned(word.symbol) ;
+	} // end of method advance
+
+	/** Does the input buffer hold exactly the given text?
+
+	  @param t The text to compare against.
+	  @return true if the buffer and t are the same, character for character.
+	 */
+	private boolean sameText(String t)
+	{
+		if (t.length() != currentTextLength)
+			return false ;
+		for (int i = 0 ; i < currentTextLength ; i++)
+			if (currentText[i] != t.charAt(i))
+				return false ;
+		return true ;
+	} // end of method sameText
+
+	/** @return the type of the current token, as a class constant from Token. */
+	public int kind()
+	{
+		return tokenKind ;
+	} // end of method kind
+
+	/** @return the identifier pool id of the current token if it is an
+	  identifier, or -1. */
+	public int identifierId()
+	{
+		return tokenIdentifierId ;
+	} // end of method identifierId
+
+	/** Turns on or off passing over runs of blanks, comment text and string
+	  text in a mapped source a word at a time, rather than a character at a
+	  time.  It is on unless turned off, and gives exactly the same tokens
+	  either way; other sources are always read a character at a time.
+	  It pays only where those runs are long, as in programs with many
+	  comments or long strings, which it lexes about twice as fast; where
+	  tokens are mostly a blank or two apart it makes no difference.
+
+	  @param on true to scan a word at a time where possible.
+	 */
+	public void setWordScanning(boolean on)
+	{
+		wordScanning = on && (mappedSource != null) ;
+		if (wordScanning)
+			bigEndian = (mappedSource.order() == ByteOrder.BIG_ENDIAN) ;
+	} // end of method setWordScanning
+
+	/** Makes this analyser intern identifiers into the given pool instead of
+	  the shared one.
+
+	  @param pool The pool to use.
+	 */
+	public void setIdentifierPool(IdentifierPool pool)
+	{
+		identifiers = pool ;
+	} // end of method setIdentifierPool
+
+	/** @return where the current token starts in the source, in bytes for a
+	  mapped file and in characters otherwise. */
+	public int offset()
+	{
+		return tokenStart ;
+	} // end of method offset
+
+	/** @return where the source after the current token starts, in the same
+	  units as offset(). */
+	public int end()
+	{
+		return tokenEnd ;
+	} // end of method end
+
+	/** @return the line number of the current token. */
+	public int line()
+	{
+		return tokenLine ;
+	} // end of method line
+
+	/** Returns where the lines read so far start, by which the line and
+	  column of any token scanned can be found from its offset().  The index
+	  is complete once the end of file token has been scanned.
+
+	  @return the line index of the source.
+	 */
+	public LineIndex lineIndex()
+	{
+		return lines ;
+	} // end of method lineIndex
+
+	/** Returns the text of the current token.  Symbols with a fixed spelling
+	  and identifiers share one String each; everything else is a view of the
+	  input buffer which is only valid until the next call to advance().
+
+	  @return the text of the current token.
+	 */
+	public CharSequence text()
+	{
+		if (tokenFixedText != null)
+			return tokenFixedText ;
+		else
+			return textView ;
+	} // end of method text
+
+	/** Returns the next token from the source file.  Repeatedly calling this
+	  will return each token in the file, and eventually null.
+
+	  @throws IOException in the event that the file cannot be read.
+	  @return the next token from the source file.
+	 */
+	public Token getNextToken() throws IOException
+	{
+		advance() ;
+		Token t ;
+		if (tokenFixedText != null)
+			t = new Token(tokenKind, tokenFixedText, tokenLine) ;
+		else
+			t = new Token(tokenKind, new String(currentText, 0, currentTextLength), tokenLine) ;
+		t.identifierId = tokenIdentifierId ;
+		t.offset = tokenStart ;
+		return t ;
 	} // end of method getNextToken
 
 	/** Entry point to text Lexer */
@@ -316,7 +1003,7 @@ public class LexicalAnalyser
 		System.err.print("file? ") ;
 		System.err.flush() ;
 		String fileName = din.readLine().trim() ;
-		LexicalAnalyser lex = new LexicalAnalyser(fileName) ;
+		LexicalAnalyser lex = new LexicalAnalyser(fileName, (args.length > 0) && args[0].equals("-mapped")) ;
 		Token t = null ;
 		do
 		{
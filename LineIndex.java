@@ -0,0 +1,152 @@
+/**
+ *
+ * Line index for 254 exercise.
+ *
+ * Records where the lines of one source start, so that a token need only
+ * carry where it starts: its line and column are worked out from that by
+ * binary search when they are wanted.
+ *
+ * Line numbers are the lexer's: it counts the line ends between tokens but
+ * not those inside a string, so the lines given are exactly the line numbers
+ * it gives tokens.  The line ends inside strings are kept apart, so that
+ * columns are always counted from the start of the line a token is really
+ * on.  Each line starts after its line end, however long that is.
+ *
+ * Offsets, and so columns, are in the units of the lexer's source: bytes for
+ * a mapped file, and characters, with each line end counted as one, for a
+ * file read line by line or text in memory.
+ *
+ **/
+
+public class LineIndex
+{
+	/** Where the line after each counted line end starts, in order. */
+	private int[] starts = new int[64] ;
+	/** The number of counted line ends recorded. */
+	private int count ;
+	/** Where the line after each line end inside a string starts, in order. */
+	private int[] breaks = new int[4] ;
+	/** The number of line ends inside strings recorded. */
+	private int breakCount ;
+	/** The line number before the first line end. */
+	private final int firstLine ;
+	/** Where the first line starts. */
+	private final int firstStart ;
+
+	/** Creates an empty index.
+
+	  @param firstLine The line number of the source before its first line end.
+	  @param firstStart Where the first line starts.
+	 */
+	public LineIndex(int firstLine, int firstStart)
+	{
+		this.firstLine = firstLine ;
+		this.firstStart = firstStart ;
+	} // end of constructor method
+
+	/** Records a line end that the lexer counts.  Line ends must be added in order.
+
+	  @param lineStart Where the line after it starts.
+	 */
+	void add(int lineStart)
+	{
+		if (count == starts.length)
+			starts = grow(starts) ;
+		starts[count++] = lineStart ;
+	} // end of method add
+
+	/** Records a line end inside a string, which the lexer does not count.
+
+	  @param lineStart Where the line after it starts.
+	 */
+	void addBreak(int lineStart)
+	{
+		if (breakCount == breaks.length)
+			breaks = grow(breaks) ;
+		breaks[breakCount++] = lineStart ;
+	} // end of method addBreak
+
+	private static int[] grow(int[] a)
+	{
+		int[] larger = new int[a.length * 2] ;
+		System.arraycopy(a, 0, larger, 0, a.length) ;
+		return larger ;
+	} // end of method grow
+
+	/** @return the number of counted line ends recorded. */
+	public int size()
+	{
+		return count ;
+	} // end of method size
+
+	/** Finds how many counted line ends come before a point in the source.
+
+	  @param offset Where a token starts.
+	  @return the number of counted line ends before offset.
+	 */
+	public int find(int offset)
+	{
+		return find(starts, count, offset) ;
+	} // end of method find
+
+	/** @return the number of the first n entries of a that are at or before offset. */
+	private static int find(int[] a, int n, int offset)
+	{
+		int low = 0, high = n ;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1 ;
+			if (a[mid] <= offset)
+				low = mid + 1 ;
+			else
+				high = mid ;
+		}
+		return low ;
+	} // end of method find
+
+	/** Is a point in the source on the line after the given number of line
+	  ends, as find() would say?  This is cheaper than find() for callers
+	  going through the source in order, who can try their last answer first.
+
+	  @param k A number of line ends.
+	  @param offset Where a token starts.
+	  @return true if find(offset) would return k.
+	 */
+	public boolean isAfter(int k, int offset)
+	{
+		if (k >= count)
+			return (k == count) && ((k == 0) || (starts[k - 1] <= offset)) ;
+		return ((k == 0) || (starts[k - 1] <= offset)) && (starts[k] > offset) ;
+	} // end of method isAfter
+
+	/** @param k A number of line ends, as returned by find().
+	  @return the line number after that many line ends. */
+	public int lineAfter(int k)
+	{
+		return firstLine + k ;
+	} // end of method lineAfter
+
+	/** @param offset Where a token starts.
+	  @return the line number of the token. */
+	public int lineOf(int offset)
+	{
+		return firstLine + find(offset) ;
+	} // end of method lineOf
+
+	/** Works out the column of a point in the source: how far it is past the
+	  start of the line it is on, counting from 1, with line ends inside
+	  strings starting lines as any other does.
+
+	  @param offset Where a token starts.
+	  @return the column of the token.
+	 */
+	public int columnOf(int offset)
+	{
+		int k = find(offset) ;
+		int lineStart = (k == 0) ? firstStart : starts[k - 1] ;
+		int b = find(breaks, breakCount, offset) ;
+		if ((b > 0) && (breaks[b - 1] > lineStart))
+			lineStart = breaks[b - 1] ;
+		return offset - lineStart + 1 ;
+	} // end of method columnOf
+} // end of class LineIndex
@@ -0,0 +1,72 @@
+/**
+ *
+ * Numbers the nonterminals of the 254 exercise grammar, in the same way that
+ * Token numbers its symbols, for consumers of parse events that would rather
+ * store a small int than the nonterminal's name.
+ *
+ **/
+
+public class Nonterminal
+{
+
+	public static final int statementPart = 0 ;
+	public static final int statementList = 1 ;
+	public static final int statement = 2 ;
+	public static final int assignmentStatement = 3 ;
+	public static final int ifStatement = 4 ;
+	public static final int whileStatement = 5 ;
+	public static final int procedureStatement = 6 ;
+	public static final int untilStatement = 7 ;
+	public static final int forStatement = 8 ;
+	public static final int condition = 9 ;
+	public static final int conditionalOperator = 10 ;
+	public static final int argumentList = 11 ;
+	public static final int expression = 12 ;
+	public static final int term = 13 ;
+	public static final int factor = 14 ;
+
+	private static final String[] names = {
+		"<statement part>",       "<statement list>",     "<statement>",
+		"<assignment statement>", "<if statement>",       "<while statement>",
+		"<procedure statement>",  "<until statement>",    "<for statement>",
+		"<condition>",            "<conditional operator>", "<argument list>",
+		"<expression>",           "<term>",               "<factor>"
+	} ;
+
+	/** @return the number of nonterminals. */
+	public static int count()
+	{
+		return names.length ;
+	} // end of method count
+
+	/** Returns the name of a nonterminal, as passed to commenceNonterminal.
+
+	  @param i The number of a nonterminal, typically as a class constant.
+	  @return The name of this nonterminal.
+	 */
+	public static String getName(int i)
+	{
+		if ((i < 0) || (i >= names.length))
+			return "UNKNOWN" ;
+		else
+			return names[i] ;
+	} // end of method getName
+
+	/** Returns the number of a nonterminal from its name.  The parser passes
+	  the same String constants every time, so they are first compared by
+	  identity.
+
+	  @param name The name of a nonterminal.
+	  @return The number of the nonterminal, or -1 if it is not one of ours.
+	 */
+	public static int getId(String name)
+	{
+		for (int i = 0 ; i < names.length ; i++)
+			if (names[i] == name)
+				return i ;
+		for (int i = 0 ; i < names.length ; i++)
+			if (names[i].equals(name))
+				return i ;
+		return -1 ;
+	} // end of method getId
+} // end of class Nonterminal
@@ -0,0 +1,319 @@
+/**
+ *
+ * Parallel syntax analyser for 254 exercise.
+ *
+ * Parses the statements of the top-level statement list at the same time on
+ * a fork-join pool.  A quick scan of the tokens first matches up if ... end
+ * if, while ... end loop, for ... end loop and do ... until to find where
+ * each top-level statement ends.  Runs of statements are then parsed on
+ * their own, each into an EventLog, and the logs are sent on in order
+ * between the events for begin and end.  The events are the same as
+ * SyntaxAnalyser's.
+ *
+ * A statement can be parsed on its own because the grammar needs no more
+ * than the next token to choose what to do, so a statement that ends just
+ * where the scan says it should is parsed exactly as it would have been in
+ * place.  Anything else, from a block that does not match up to a syntax
+ * error in any statement, makes the whole file be parsed again in the usual
+ * way, so errors are reported just as SyntaxAnalyser reports them.
+ *
+ * Each run is parsed by a worker: a view of the tokens, an analyser and a
+ * log, which are made once and then kept.  A parse borrows workers from those
+ * spare as its runs need them, and a worker's log keeps the events of every
+ * run it parsed one after another, each sent on as a range of it.  Once the
+ * events are sent on, the workers are emptied and handed back, so the spare
+ * workers are as many as were ever busy at once.  A file with too few
+ * statements to give minimumThreads threads minimumStatementsPerThread each
+ * is parsed on one thread, as it would take longer to scan, split and send
+ * on than to parse.
+ *
+ **/
+
+import java.io.* ;
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.ConcurrentLinkedQueue ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.Future ;
+
+public class ParallelSyntaxAnalyser extends SyntaxAnalyser
+{
+	/** The fewest top-level statements worth giving a thread of their own. */
+	public static final int minimumStatementsPerThread = 512 ;
+	/** The fewest threads worth parsing on: the scan, the logs and sending
+	  them on cost about as much as parsing, which fewer threads cannot win back. */
+	public static final int minimumThreads = 4 ;
+	/** How many runs of statements to make for each thread of the pool. */
+	private static final int runsPerThread = 4 ;
+
+	/* What the scan opens blocks with, as it matches up their ends. */
+	private static final int ifBlock = 0,
+			loopBlock = 1,
+			forControls = 2,
+			untilBlock = 3 ;
+
+	/** The pool the statements are parsed on. */
+	private final ForkJoinPool pool ;
+	/** The name of the file, for the analysers of runs of statements. */
+	private final String fileName ;
+
+	/* The top-level statements found by the scan: the first token of each,
+	  the number of them, and the index of the end that closes the list. */
+	private int[] statementStarts = new int[256] ;
+	private int statementCount ;
+	private int listEnd ;
+
+	/* Where the events of each run are: the log of the worker that parsed it,
+	  the range of that log, and the number of nonterminals in it. */
+	private EventLog[] runLogs ;
+	private int[] runStarts, runEnds, runNonterminals ;
+
+	/** What a thread needs to parse a run of statements. */
+	private static class Worker
+	{
+		final TokenBuffer view = new TokenBuffer() ;
+		final SyntaxAnalyser syn = new SyntaxAnalyser("", view) ;
+		final EventLog log = new EventLog(view, 0) ;
+	} // end of class Worker
+
+	/** The workers no parse has borrowed, each with an empty log. */
+	private static final ConcurrentLinkedQueue<Worker> spare = new ConcurrentLinkedQueue<Worker>() ;
+	/** What the views of spare workers share, so as not to keep any file's tokens. */
+	private static final TokenBuffer noTokens = new TokenBuffer() ;
+
+	/** The workers this parse has borrowed that are not parsing a run just now. */
+	private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<Worker>() ;
+
+	/** Did the last parse fall back to parsing on one thread? */
+	private boolean fellBack ;
+
+	/** Creates an analyser for a file that has already been tokenised.
+
+	  @param fileName The name of the file the tokens came from.
+	  @param tokens Every token of the file, up to and including end of file.
+	  @param pool The pool to parse on.
+	 */
+	public ParallelSyntaxAnalyser(String fileName, TokenBuffer tokens, ForkJoinPool pool)
+	{
+		super(fileName, tokens) ;
+		this.fileName = fileName ;
+		this.pool = pool ;
+	} // end of constructor method
+
+	/** @return true if the last parse was done on one thread, because the pool
+	  has too few threads, the file was small, its blocks did not match up, or it
+	  has a syntax error. */
+	public boolean fellBack()
+	{
+		return fellBack ;
+	} // end of method fellBack
+
+	public void _statementPart_() throws IOException, CompilationException
+	{
+		int threads = 0 ;
+		if ((pool.getParallelism() >= minimumThreads) && scan())
+			threads = Math.min(pool.getParallelism(), statementCount / minimumStatementsPerThread) ;
+		int runCount = threads * runsPerThread ;
+		fellBack = (threads < minimumThreads) || !parseRuns(runCount) ;
+		if (fellBack)
+		{
+			giveBack() ;
+			super._statementPart_() ;
+			return ;
+		}
+
+		myGenerate.commenceNonterminal("<statement part>") ;
+		acceptTerminal(Token.beginSymbol) ;
+		myGenerate.commenceNonterminal("<statement list>") ;
+		EventSink sink = myGenerate.sink() ;
+		for (int r = 0 ; r < runCount ; r++)
+		{
+			runLogs[r].writeEvents(sink, tokens, runStarts[r], runEnds[r]) ;
+			myGenerate.nonterminalCount += runNonterminals[r] ;
+		}
+		giveBack() ;
+		myGenerate.finishNonterminal("<statement list>") ;
+		tokenIndex = listEnd - 1 ;
+		readNextToken() ;
+		acceptTerminal(Token.endSymbol) ;
+		myGenerate.finishNonterminal("<statement part>") ;
+	} // end of method _statementPart_
+
+	/** Finds the top-level statements by matching up the blocks.  It gives up
+	  on anything a correct program could not have at the top level.
+
+	  @return true if the statements were found.
+	 */
+	private boolean scan()
+	{
+		int[] open = new int[64] ;
+		int depth = 0 ;
+		statementCount = 0 ;
+		if ((tokens.size() < 2) || (tokens.kind(0) != Token.beginSymbol))
+			return false ;
+
+		addStatement(1) ;
+		for (int i = 1 ; i < tokens.size() ; i++)
+		{
+			int k = tokens.kind(i) ;
+			if ((k == Token.ifSymbol) || (k == Token.whileSymbol) || (k == Token.forSymbol) ||
+					((k == Token.doSymbol) && ((depth == 0) || (open[depth - 1] != forControls))))
+			{
+				if (depth == open.length)
+					open = grow(open) ;
+				open[depth++] = (k == Token.ifSymbol) ? ifBlock
+						: (k == Token.whileSymbol) ? loopBlock
+						: (k == Token.forSymbol) ? forControls : untilBlock ;
+			}
+			else if (k == Token.doSymbol)
+				open[depth - 1] = loopBlock ;
+			else if (k == Token.untilSymbol)
+			{
+				if ((depth == 0) || (open[--depth] != untilBlock))
+					return false ;
+			}
+			else if (k == Token.endSymbol)
+			{
+				int next = (i + 1 < tokens.size()) ? tokens.kind(i + 1) : Token.eofSymbol ;
+				if (depth == 0)
+				{
+					// the end of the statement part, which nothing but end of file may follow
+					listEnd = i ;
+					return next == Token.eofSymbol ;
+				}
+				int block = open[--depth] ;
+				if (!((next == Token.ifSymbol) && (block == ifBlock)) &&
+						!((next == Token.loopSymbol) && (block == loopBlock)))
+					return false ;
+				i++ ;
+			}
+			else if ((k == Token.semicolonSymbol) && (depth == 0))
+				addStatement(i + 1) ;
+			else if (k == Token.eofSymbol)
+				return false ;
+		}
+		return false ;
+	} // end of method scan
+
+	private void addStatement(int start)
+	{
+		if (statementCount == statementStarts.length)
+			statementStarts = grow(statementStarts) ;
+		statementStarts[statementCount++] = start ;
+	} // end of method addStatement
+
+	/** Parses the statements in runs on the pool.
+
+	  @param runCount How many runs to make.
+	  @return true if every run was parsed, or false if any statement did not
+	    parse on its own exactly as the scan expected.
+	  @throws IOException if a run could not be parsed for some other reason.
+	 */
+	private boolean parseRuns(int runCount) throws IOException
+	{
+		runLogs = new EventLog[runCount] ;
+		runStarts = new int[runCount] ;
+		runEnds = new int[runCount] ;
+		runNonterminals = new int[runCount] ;
+
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>() ;
+		for (int r = 0 ; r < runCount ; r++)
+		{
+			final int run = r,
+					first = (int) ((long) statementCount * r / runCount),
+					last = (int) ((long) statementCount * (r + 1) / runCount) ;
+			futures.add(pool.submit(() -> parseRun(run, first, last))) ;
+		}
+
+		try
+		{
+			for (Future<Boolean> f : futures)
+				if (!f.get())
+					return false ;
+			return true ;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt() ;
+			throw new InterruptedIOException("interrupted while parsing " + fileName) ;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause() ;
+			throw new IOException(e.getCause()) ;
+		}
+		finally
+		{
+			for (Future<Boolean> f : futures)
+				f.cancel(false) ;
+		}
+	} // end of method parseRuns
+
+	/** Parses a run of statements, and the semicolons before all but the
+	  first statement of the file, onto the end of an idle worker's log.
+
+	  @param r The number of the run, where to record the range of its events.
+	  @param first The first statement.
+	  @param last The statement after the last one.
+	  @return false if a statement has an error or does not end where the scan found.
+	  @throws IOException never, in practice, as the tokens are in memory.
+	 */
+	private boolean parseRun(int r, int first, int last) throws IOException
+	{
+		Worker w = idle.poll() ;
+		if (w == null)
+		{
+			w = spare.poll() ;
+			if (w == null)
+				w = new Worker() ;
+			w.view.share(tokens) ;
+			w.syn.reset(fileName, w.view) ;
+		}
+		EventLog log = w.log ;
+		int from = log.size(), nonterminals = log.nonterminals() ;
+		log.restart((first == 0) ? statementStarts[0] : statementStarts[first] - 1) ;
+		try
+		{
+			for (int s = first ; s < last ; s++)
+			{
+				if (s > 0)
+					log.insertTerminal(Token.semicolonSymbol, ";", w.view.line(statementStarts[s] - 1)) ;
+				int end = (s + 1 < statementCount) ? statementStarts[s + 1] - 1 : listEnd ;
+				if (w.syn.parseFragment(Nonterminal.statement, statementStarts[s], log) != end)
+					return false ;
+			}
+		}
+		catch (CompilationException e)
+		{
+			// the worker is left mid-statement, so it is not used again
+			return false ;
+		}
+		runLogs[r] = log ;
+		runStarts[r] = from ;
+		runEnds[r] = log.size() ;
+		runNonterminals[r] = log.nonterminals() - nonterminals ;
+		idle.add(w) ;
+		return true ;
+	} // end of method parseRun
+
+	/** Empties the logs of the workers this parse borrowed and hands them back. */
+	private void giveBack()
+	{
+		for (Worker w = idle.poll() ; w != null ; w = idle.poll())
+		{
+			w.log.clear() ;
+			w.view.share(noTokens) ;
+			spare.add(w) ;
+		}
+		runLogs = null ;
+	} // end of method giveBack
+
+	private static int[] grow(int[] a)
+	{
+		int[] larger = new int[a.length * 2] ;
+		System.arraycopy(a, 0, larger, 0, a.length) ;
+		return larger ;
+	} // end of method grow
+} // end of class ParallelSyntaxAnalyser
@@ -0,0 +1,217 @@
+/**
+ *
+ * Parse tables for TableSyntaxAnalyser, made from SyntaxAnalyser.grammar by GrammarCompiler.
+ * Do not edit: change the grammar and run make.
+ *
+ **/
+
+final class ParseTable
+{
+	static final int terminalCount = 38 ;
+	static final int nonterminalCount = 23 ;
+	/** The nonterminal the whole source is. */
+	static final int start = 0 ;
+
+	/* The item codes of the actions. */
+	static final int skipStrays = 61 ;
+
+	/** The name of each nonterminal, or null if it is hidden. */
+	static final String[] names =
+	{
+		"<statement part>",
+		"<statement list>",
+		null,
+		"<statement>",
+		"<assignment statement>",
+		null,
+		"<if statement>",
+		null,
+		"<while statement>",
+		"<procedure statement>",
+		"<until statement>",
+		"<for statement>",
+		null,
+		"<condition>",
+		null,
+		"<conditional operator>",
+		"<argument list>",
+		null,
+		"<expression>",
+		null,
+		"<term>",
+		null,
+		"<factor>",
+	} ;
+
+	/** Is each nonterminal where errors are recovered from? */
+	static final boolean[] recovers =
+	{
+		false, false, false, true, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, 
+	} ;
+
+	/** The message of each nonterminal for errors in choosing an alternative, or -1. */
+	static final int[] catchMessages =
+	{
+		0, -1, -1, 3, 4, 4, -1, 5, 7, 8, 9, 10, 10, 11, 11, 12, 13, 13, 14, 14, 15, 15, 16, 
+	} ;
+
+	/** The message of each nonterminal for a token that starts no alternative, or -1. */
+	static final int[] expectMessages =
+	{
+		-1, -1, -1, 3, 4, -1, -1, -1, 7, 8, 9, 10, -1, 11, -1, 12, -1, -1, -1, -1, -1, -1, 16, 
+	} ;
+
+	/** The production for each nonterminal and next token, or -1 for an error. */
+	static final int[][] table =
+	{
+		{ 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, // <statement part>
+		{ 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }, // <statement list>
+		{ 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 3, 3, 3, 3, 3, 3, 3 }, // <more statements>
+		{ -1, -1, -1, 7, -1, -1, -1, 8, -1, -1, -1, -1, -1, -1, -1, -1, 4, 5, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 6, 9 }, // <statement>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 10, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <assignment statement>
+		{ 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 11, 12, 12, 12, 12, 12, 12 }, // <assigned value>
+		{ 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13 }, // <if statement>
+		{ 15, 15, 15, 15, 15, 15, 15, 15, 14, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15 }, // <if ending>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 16, -1 }, // <while statement>
+		{ -1, -1, -1, 17, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <procedure statement>
+		{ -1, -1, -1, -1, -1, -1, -1, 18, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <until statement>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 19 }, // <for statement>
+		{ 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 20, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21 }, // <for controls>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 22, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <condition>
+		{ 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 23, 26, 26, 26, 26, 26, 26, 26, 26, 26, 24, 26, 26, 26, 26, 25, 26, 26, 26, 26, 26, 26 }, // <compared value>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 29, -1, -1, 28, 27, -1, -1, -1, -1, -1, 32, 31, -1, -1, 30, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <conditional operator>
+		{ 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33, 33 }, // <argument list>
+		{ 35, 35, 35, 35, 35, 34, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35 }, // <more arguments>
+		{ 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36, 36 }, // <expression>
+		{ 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39, 38, 39, 39, 37, 39, 39, 39, 39, 39, 39, 39, 39, 39, 39 }, // <more terms>
+		{ 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40, 40 }, // <term>
+		{ 43, 43, 43, 43, 43, 43, 42, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 43, 41, 43, 43, 43, 43 }, // <more factors>
+		{ -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 44, -1, -1, -1, 46, -1, -1, -1, -1, -1, 45, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1 }, // <factor>
+	} ;
+
+	/** The items of each production, last first: terminals are Token symbols, then come
+	  nonterminals from terminalCount, then actions. */
+	static final int[][] items =
+	{
+		{ 8, 61, 39, 2 },
+		{ 40, 41 },
+		{ 40, 41, 30 },
+		{},
+		{ 42 },
+		{ 44 },
+		{ 46 },
+		{ 47 },
+		{ 48 },
+		{ 49 },
+		{ 43, 1, 16 },
+		{ 31 },
+		{ 56 },
+		{ 45, 39, 34, 51, 17 },
+		{ 17, 8 },
+		{ 17, 8, 39, 9 },
+		{ 23, 8, 39, 23, 51, 36 },
+		{ 29, 54, 20, 16, 3 },
+		{ 51, 35, 39, 7 },
+		{ 23, 8, 39, 7, 50, 37 },
+		{ 50, 29, 42, 30, 51, 30, 42, 20 },
+		{},
+		{ 52, 53, 16 },
+		{ 16 },
+		{ 26 },
+		{ 31 },
+		{},
+		{ 15 },
+		{ 14 },
+		{ 11 },
+		{ 25 },
+		{ 22 },
+		{ 21 },
+		{ 55, 16 },
+		{ 54, 5 },
+		{},
+		{ 57, 58 },
+		{ 57, 58, 27 },
+		{ 57, 58, 24 },
+		{},
+		{ 59, 60 },
+		{ 58, 33 },
+		{ 58, 6 },
+		{},
+		{ 16 },
+		{ 26 },
+		{ 29, 56, 20 },
+	} ;
+
+	/** The message explaining errors passing out through each item, or -1. */
+	static final int[][] tags =
+	{
+		{ -1, 0, 0, -1 },
+		{ -1, 1 },
+		{ -1, 2, -1 },
+		{},
+		{ 3 },
+		{ 3 },
+		{ 3 },
+		{ 3 },
+		{ 3 },
+		{ 3 },
+		{ 4, 4, 4 },
+		{ 4 },
+		{ 4 },
+		{ 5, 5, -1, 6, -1 },
+		{ 5, 5 },
+		{ 5, 5, 5, 5 },
+		{ 7, 7, 7, 7, 7, 7 },
+		{ 8, 8, 8, 8, 8 },
+		{ 9, 9, 9, 9 },
+		{ 10, 10, 10, 10, 10, 10 },
+		{ 10, 10, 10, 10, 10, 10, 10, 10 },
+		{},
+		{ 11, 11, 11 },
+		{ 11 },
+		{ 11 },
+		{ 11 },
+		{},
+		{ 12 },
+		{ 12 },
+		{ 12 },
+		{ 12 },
+		{ 12 },
+		{ 12 },
+		{ 13, -1 },
+		{ 13, 13 },
+		{},
+		{ 14, 14 },
+		{ 14, 14, 14 },
+		{ 14, 14, 14 },
+		{},
+		{ 15, 15 },
+		{ 15, 15 },
+		{ 15, 15 },
+		{},
+		{ 16 },
+		{ 16 },
+		{ 16, 16, 16 },
+	} ;
+
+	static final String[] messages =
+	{
+		"<statement part>",
+		"list of statements",
+		"semicolonSymbol",
+		"statement: <identifier>, <if>, <while>, <call>, <do> or <for>",
+		"<identifier>",
+		"<end>",
+		"<if>",
+		"<while>",
+		"<call> , <identifier>, <(> , <)>",
+		"<until>",
+		"<for>",
+		"<identifier>, <numberConstant> or <stringConstant>",
+		"<'greaterThanSymbol'>, <'greaterEqualSymbol'>, <'equalSymbol'>, <'notEqualSymbol'>, <'lessThanSymbol'> or <'lessEqualSymbol'>",
+		"<,>",
+		"<+> or <->",
+		"<*> or </>",
+		"<identifier>, <number constant>, <(> or <)>",
+	} ;
+} // end of class ParseTable
@@ -2,7 +2,9 @@
  * Copyright (c) 22/2/2018 This class was created by Orber J.
  */
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
 
@@ -16,8 +18,42 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
      * @throws IOException - InputOutput exception to detect if something went wrong with the file
      */
     public SyntaxAnalyser(String filename) throws IOException {
-        this.filename = filename.substring(16);
-        lex = new LexicalAnalyser(filename);
+        this(filename, false);
+    }
+
+    /**
+     * SyntaxAnalyser constructor that can choose the memory-mapped scanner backend
+     * @param filename - name of file to be loaded
+     * @param memoryMapped - true to scan the file's bytes in place rather than line by line
+     * @throws IOException - InputOutput exception to detect if something went wrong with the file
+     */
+    public SyntaxAnalyser(String filename, boolean memoryMapped) throws IOException {
+        this.filename = new File(filename).getName();
+        sourceName = this.filename;
+        lex = new LexicalAnalyser(filename, memoryMapped);
+    }
+
+    /**
+     * SyntaxAnalyser constructor for a file that has already been tokenised
+     * @param filename - name of the file the tokens came from
+     * @param tokens - every token of the file, up to and including end of file
+     */
+    public SyntaxAnalyser(String filename, TokenBuffer tokens) {
+        this.filename = new File(filename).getName();
+        sourceName = this.filename;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Points this analyser at another tokenised file, so that one analyser can parse file after file
+     * @param filename - name of the file the tokens came from
+     * @param tokens - every token of the file, up to and including end of file
+     */
+    public void reset(String filename, TokenBuffer tokens) {
+        this.filename = new File(filename).getName();
+        sourceName = this.filename;
+        this.tokens = tokens;
+        lex = null;
     }
 
     /**
@@ -32,13 +68,45 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
         acceptTerminal(Token.beginSymbol);
         try{
             listStatement();
+            while(recovering() && nextToken.symbol != Token.endSymbol && nextToken.symbol != Token.eofSymbol){
+                // a statement stopped early on a token that ends a block; skip it and carry on
+                recover(null, new Diagnostic(nextToken, Token.endSymbol, filename));
+                readNextToken();
+                listStatement();
+            }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<statement part>", nextToken));
+            myGenerate.reportError(expected("<statement part>"), e);
         }
         acceptTerminal(Token.endSymbol);
         myGenerate.finishNonterminal("<statement part>");
     }
 
+    /**
+     * Parses just one statement or statement list from the TokenBuffer, starting at the given token,
+     * to re-parse part of an edited file. Errors are thrown rather than reported.
+     * @param nonterminal - Nonterminal.statement or Nonterminal.statementList
+     * @param from - index of the first token to parse
+     * @param sink - where to send the events
+     * @return the index of the first token after the fragment
+     * @throws IOException - InputOutput exception to detect if something went wrong with the file
+     * @throws CompilationException - exception thrown to report errors during Compilation
+     */
+    int parseFragment(int nonterminal, int from, EventSink sink) throws IOException, CompilationException {
+        if (myGenerate == null) {
+            myGenerate = new Generate();
+            myGenerate.sourceName = filename;
+        }
+        myGenerate.setSink(sink);
+        tokenIndex = from - 1;
+        readNextToken();
+        if (nonterminal == Nonterminal.statement) {
+            statement();
+        } else {
+            listStatement();
+        }
+        return tokenIndex;
+    }
+
     /**
      * Accepts a token based on it's content so if the symbol of the token matches a symbol defined in the token class
      * then the generator will insert it as a terminal and lex will get next token
@@ -50,10 +118,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
     @Override
     public void acceptTerminal(int symbol) throws IOException, CompilationException {
         if(nextToken.symbol == symbol){
-            myGenerate.insertTerminal(nextToken);
-            nextToken = lex.getNextToken();
+            insertNextToken();
+            readNextToken();
         }else{
-            myGenerate.reportError(nextToken, "line number " + nextToken.lineNumber + " in " + filename + ":"+ " token (" + Token.getName(nextToken.symbol) + ").\n");
+            myGenerate.reportError(new Diagnostic(nextToken, symbol, filename), null);
         }
     }
 
@@ -68,7 +136,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
         try{
             statement();
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("list of statements", nextToken));
+            myGenerate.reportError(expected("list of statements"), e);
         }
 
         while(nextToken.symbol == Token.semicolonSymbol){
@@ -76,7 +144,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
             try{
                 statement();
             }catch (CompilationException e) {
-                myGenerate.reportError(nextToken,formatError("semicolonSymbol", nextToken));
+                myGenerate.reportError(expected("semicolonSymbol"), e);
             }
         }
         myGenerate.finishNonterminal("<statement list>");
@@ -110,11 +178,15 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                     forStatement();
                     break;
                 default:
-                    myGenerate.reportError(nextToken,formatError("statement: <identifier>, <if>, <while>, <call>, <do> or <for>",nextToken));
+                    myGenerate.reportError(expected("statement: <identifier>, <if>, <while>, <call>, <do> or <for>"), null);
                     break;
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("statement: <identifier>, <if>, <while>, <call>, <do> or <for>", nextToken));
+            if(recovering()){
+                recover(e, expected("statement: <identifier>, <if>, <while>, <call>, <do> or <for>"));
+            }else{
+                myGenerate.reportError(expected("statement: <identifier>, <if>, <while>, <call>, <do> or <for>"), e);
+            }
         }
         myGenerate.finishNonterminal("<statement>");
     }
@@ -140,11 +212,11 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                     }
                     break;
                 default:
-                    myGenerate.reportError(nextToken,formatError("<identifier>",nextToken));
+                    myGenerate.reportError(expected("<identifier>"), null);
                     break;
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<identifier>", nextToken));
+            myGenerate.reportError(expected("<identifier>"), e);
         }
         myGenerate.finishNonterminal("<assignment statement>");
     }
@@ -164,7 +236,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
         try{
             condition();
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<if>", nextToken));
+            myGenerate.reportError(expected("<if>"), e);
         }
         acceptTerminal(Token.thenSymbol);
 
@@ -180,7 +252,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 acceptTerminal(Token.ifSymbol);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<end>", nextToken));
+            myGenerate.reportError(expected("<end>"), e);
         }
         myGenerate.finishNonterminal("<if statement>");
     }
@@ -201,10 +273,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 acceptTerminal(Token.endSymbol);
                 acceptTerminal(Token.loopSymbol);
             }else{
-                myGenerate.reportError(nextToken,formatError("<while>",nextToken));
+                myGenerate.reportError(expected("<while>"), null);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<while>", nextToken));
+            myGenerate.reportError(expected("<while>"), e);
         }
 
         myGenerate.finishNonterminal("<while statement>");
@@ -225,10 +297,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 listArgument();
                 acceptTerminal(Token.rightParenthesis);
             }else{
-                myGenerate.reportError(nextToken,formatError("<call> , <identifier>, <(> , <)>",nextToken));
+                myGenerate.reportError(expected("<call> , <identifier>, <(> , <)>"), null);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<call> , <identifier>, <(> , <)>", nextToken));
+            myGenerate.reportError(expected("<call> , <identifier>, <(> , <)>"), e);
         }
         myGenerate.finishNonterminal("<procedure statement>");
     }
@@ -247,10 +319,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 acceptTerminal(Token.untilSymbol);
                 condition();
             }else{
-                myGenerate.reportError(nextToken,formatError("<until>",nextToken));
+                myGenerate.reportError(expected("<until>"), null);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<until>", nextToken));
+            myGenerate.reportError(expected("<until>"), e);
         }
         myGenerate.finishNonterminal("<until statement>");
     }
@@ -278,10 +350,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 acceptTerminal(Token.endSymbol);
                 acceptTerminal(Token.loopSymbol);
             } else {
-                myGenerate.reportError(nextToken,formatError("<for>",nextToken));
+                myGenerate.reportError(expected("<for>"), null);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<for>", nextToken));
+            myGenerate.reportError(expected("<for>"), e);
         }
 
         myGenerate.finishNonterminal("<for statement>");
@@ -313,10 +385,10 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                         break;
                 }
             }else{
-                myGenerate.reportError(nextToken,formatError("<identifier>, <numberConstant> or <stringConstant>",nextToken));
+                myGenerate.reportError(expected("<identifier>, <numberConstant> or <stringConstant>"), null);
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<identifier>, <numberConstant> or <stringConstant>", nextToken));
+            myGenerate.reportError(expected("<identifier>, <numberConstant> or <stringConstant>"), e);
         }
         myGenerate.finishNonterminal("<condition>");
     }
@@ -350,11 +422,11 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                     acceptTerminal(Token.lessEqualSymbol);
                     break;
                 default:
-                    myGenerate.reportError(nextToken,formatError("<'greaterThanSymbol'>, <'greaterEqualSymbol'>, <'equalSymbol'>, <'notEqualSymbol'>, <'lessThanSymbol'> or <'lessEqualSymbol'>",nextToken));
+                    myGenerate.reportError(expected("<'greaterThanSymbol'>, <'greaterEqualSymbol'>, <'equalSymbol'>, <'notEqualSymbol'>, <'lessThanSymbol'> or <'lessEqualSymbol'>"), null);
                     break;
             }
         }catch (CompilationException e) {
-            myGenerate.reportError(nextToken,formatError("<'greaterThanSymbol'>, <'greaterEqualSymbol'>, <'equalSymbol'>, <'notEqualSymbol'>, <'lessThanSymbol'> or <'lessEqualSymbol'>", nextToken));
+            myGenerate.reportError(expected("<'greaterThanSymbol'>, <'greaterEqualSymbol'>, <'equalSymbol'>, <'notEqualSymbol'>, <'lessThanSymbol'> or <'lessEqualSymbol'>"), e);
         }
 
 
@@ -375,112 +447,134 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser{
                 listArgument();
             }
         }catch (CompilationException e) {
-            throw new CompilationException(formatError("<,>", nextToken), e);
+            throw new DiagnosticException(expected("<,>"), e);
         }
 
         myGenerate.finishNonterminal("<argument list>");
     }
 
+    /* The open <expression>, <term> and <factor> nonterminals, innermost last, while an expression is parsed. */
+    private static final int expressionFrame = 0, termFrame = 1, factorFrame = 2;
+    private static final String[] frameNames = { "<expression>", "<term>", "<factor>" };
+    /* What each open nonterminal reports as expected when an error passes through it. */
+    private static final String factorExpected = "<identifier>, <number constant>, <(> or <)>";
+    private static final String[] frameExpected = { "<+> or <->", "<*> or </>", factorExpected };
+    private int[] frames = new int[32];
+    private int frameCount;
+
+    /* What the expression parser does next. */
+    private static final int startTerm = 0, startFactor = 1, afterFactor = 2, endTerm = 3, endExpression = 4;
+
     /**
-     * checks if token is an expression and accepts it, otherwise return error
+     * checks if token is an expression and accepts it, otherwise return error.
+     * An expression is a term followed by any number of + or - and a term, a term is a factor optionally
+     * followed by * or / and another term, and a factor is an identifier, a number or a bracketed expression.
+     * The three are parsed together by one loop with an explicit stack of the open nonterminals rather than
+     * by calling each other, so long products and deeply bracketed expressions use no more Java stack
+     * than short ones, while the events are the same as a recursive descent would give, nested terms and all.
      * @throws IOException - InputOutput exception to detect if something went wrong with the file
      * @throws CompilationException - exception thrown to report errors during Compilation
      */
     private void expression() throws IOException, CompilationException{
-        myGenerate.commenceNonterminal("<expression>");
+        frameCount = 0;
+        pushFrame(expressionFrame);
+        int step = startTerm;
         try{
-            term();
-            while(nextToken.symbol == Token.plusSymbol || nextToken.symbol == Token.minusSymbol){
-                switch(nextToken.symbol){
-                    case Token.plusSymbol:
-                        acceptTerminal(Token.plusSymbol);
-                        term();
+            while (frameCount > 0) {
+                switch (step) {
+                    case startTerm:
+                        pushFrame(termFrame);
+                        step = startFactor;
                         break;
-                    case Token.minusSymbol:
-                        acceptTerminal(Token.minusSymbol);
-                        term();
+                    case startFactor:
+                        pushFrame(factorFrame);
+                        switch(nextToken.symbol){
+                            case Token.identifier:
+                                acceptTerminal(Token.identifier);
+                                popFrame();
+                                step = afterFactor;
+                                break;
+                            case Token.numberConstant:
+                                acceptTerminal(Token.numberConstant);
+                                popFrame();
+                                step = afterFactor;
+                                break;
+                            case Token.leftParenthesis:
+                                acceptTerminal(Token.leftParenthesis);
+                                pushFrame(expressionFrame);
+                                step = startTerm;
+                                break;
+                            default:
+                                myGenerate.reportError(expected(factorExpected), null);
+                                break;
+                        }
                         break;
-                    default:
-                        myGenerate.reportError(nextToken,formatError("<+> or <->",nextToken));
+                    case afterFactor:
+                        // the factor, or a nested term, of the innermost term is done
+                        if (nextToken.symbol == Token.timesSymbol || nextToken.symbol == Token.divideSymbol) {
+                            acceptTerminal(nextToken.symbol);
+                            step = startTerm;
+                        } else {
+                            step = endTerm;
+                        }
+                        break;
+                    case endTerm:
+                        popFrame();
+                        if (frames[frameCount - 1] == termFrame) {
+                            step = afterFactor;
+                        } else if (nextToken.symbol == Token.plusSymbol || nextToken.symbol == Token.minusSymbol) {
+                            acceptTerminal(nextToken.symbol);
+                            step = startTerm;
+                        } else {
+                            step = endExpression;
+                        }
+                        break;
+                    case endExpression:
+                        popFrame();
+                        if (frameCount > 0) {
+                            // the expression was in brackets, in a factor
+                            acceptTerminal(Token.rightParenthesis);
+                            popFrame();
+                            step = afterFactor;
+                        }
                         break;
                 }
             }
         }catch (CompilationException e) {
-            throw new CompilationException(formatError("<+> or <->", nextToken), e);
+            // each open nonterminal adds its own explanation, innermost first, as the recursive methods did
+            CompilationException cause = e;
+            while (frameCount > 0) {
+                cause = new DiagnosticException(expected(frameExpected[frames[--frameCount]]), cause);
+            }
+            throw cause;
         }
-
-
-        myGenerate.finishNonterminal("<expression>");
     }
 
     /**
-     * checks if token is a term and accepts it, otherwise return error
-     * @throws IOException - InputOutput exception to detect if something went wrong with the file
-     * @throws CompilationException - exception thrown to report errors during Compilation
+     * Opens a nonterminal of an expression
+     * @param frame - expressionFrame, termFrame or factorFrame
      */
-    private void term() throws IOException, CompilationException{
-        myGenerate.commenceNonterminal("<term>");
-        try{
-            factor();
-            while(nextToken.symbol == Token.timesSymbol || nextToken.symbol == Token.divideSymbol){
-                switch(nextToken.symbol){
-                    case Token.timesSymbol:
-                        acceptTerminal(Token.timesSymbol);
-                        term();
-                        break;
-                    case Token.divideSymbol:
-                        acceptTerminal(Token.divideSymbol);
-                        term();
-                        break;
-                    default:
-                        myGenerate.reportError(nextToken,formatError("<*> or </>",nextToken));
-                        break;
-                }
-            }
-        }catch (CompilationException e) {
-            throw new CompilationException(formatError("<*> or </>", nextToken), e);
+    private void pushFrame(int frame) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
         }
-        myGenerate.finishNonterminal("<term>");
+        frames[frameCount++] = frame;
+        myGenerate.commenceNonterminal(frameNames[frame]);
     }
 
     /**
-     * checks if token is a factor and accepts it, otherwise return error
-     * @throws IOException - InputOutput exception to detect if something went wrong with the file
-     * @throws CompilationException - exception thrown to report errors during Compilation
+     * Finishes the innermost open nonterminal of an expression
      */
-    private void factor() throws IOException, CompilationException{
-        myGenerate.commenceNonterminal("<factor>");
-        try{
-            switch(nextToken.symbol){
-                case Token.identifier:
-                    acceptTerminal(Token.identifier);
-                    break;
-                case Token.numberConstant:
-                    acceptTerminal(Token.numberConstant);
-                    break;
-                case Token.leftParenthesis:
-                    acceptTerminal(Token.leftParenthesis);
-                    expression();
-                    acceptTerminal(Token.rightParenthesis);
-                    break;
-                default:
-                    myGenerate.reportError(nextToken,formatError("<identifier>, <number constant>, <(> or <)>",nextToken));
-                    break;
-            }
-        }catch (CompilationException e) {
-            throw new CompilationException(formatError("<identifier>, <number constant>, <(> or <)>", nextToken), e);
-        }
-
-        myGenerate.finishNonterminal("<factor>");
+    private void popFrame() {
+        myGenerate.finishNonterminal(frameNames[frames[--frameCount]]);
     }
 
     /**
-     * Formats error before returning it
-     * @param expected
-     * @param token
-     * @return
+     * Describes what was expected at the next token, without formatting any message yet
+     * @param expected - description of what was expected
+     * @return the diagnostic
      */
-    private String formatError(String expected, Token token) {
-        return "line number " + token.lineNumber + " in " + filename + ":\n\t- Looking for " + expected + " but found (" + Token.getName(token.symbol) + ").\n";
+    private Diagnostic expected(String expected) {
+        return new Diagnostic(nextToken, expected, filename);
     }
 }
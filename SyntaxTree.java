@@ -0,0 +1,338 @@
+/**
+ *
+ * Syntax tree for 254 exercise, built from parse events.
+ *
+ * Nodes live in an arena of parallel int arrays rather than as objects: each
+ * node is an index with a kind, a first child, a next sibling and, for a
+ * terminal, the index of its token in tokens().  A tree costs four ints per
+ * node plus its tokens, and reset() empties it for the next file while
+ * keeping the arrays.
+ *
+ * A nonterminal's kind is its Nonterminal number; a terminal's kind is its
+ * Token symbol negated.  The root, when there is one, is node 0.
+ *
+ **/
+
+public class SyntaxTree implements EventSink
+{
+	/** Marks a missing child or sibling. */
+	public static final int none = -1 ;
+
+	/** The number of nodes room is made for at first. */
+	private static final int initialCapacity = 256 ;
+
+	int[] kind = new int[initialCapacity] ;
+	int[] firstChild = new int[initialCapacity] ;
+	int[] nextSibling = new int[initialCapacity] ;
+	int[] token = new int[initialCapacity] ;
+	/** The number of nodes held. */
+	private int size ;
+
+	/** The text and line of every terminal in the tree. */
+	private TokenBuffer tokens = new TokenBuffer() ;
+	/** Are tokens someone else's, which the terminals index into rather than add to? */
+	private boolean sharedTokens ;
+	/** The index in tokens of the first terminal, when they are shared. */
+	private int firstToken ;
+	/** The index in tokens of the next terminal, when they are shared. */
+	private int nextToken ;
+	/** The number of nodes no longer in the tree since subtrees were replaced. */
+	private int garbage ;
+
+	/* While building: the nonterminals not yet finished, and the last child of each. */
+	private int[] openNode = new int[64] ;
+	private int[] openLastChild = new int[64] ;
+	private int depth ;
+	/** The last top-level node, which later top-level nodes follow. */
+	private int lastRoot = none ;
+
+	/** Empties the tree, keeping its storage for the next file. */
+	public void reset()
+	{
+		size = 0 ;
+		depth = 0 ;
+		lastRoot = none ;
+		garbage = 0 ;
+		nextToken = firstToken ;
+		if (!sharedTokens)
+			tokens.clear() ;
+	} // end of method reset
+
+	/** Makes the tree's terminals refer to tokens already in a buffer, rather
+	  than copying each one as it arrives.  The parse must then accept the
+	  buffer's tokens in order, starting at the given one, which is so when the
+	  parser reads from that buffer and finds no errors.
+
+	  @param t The tokens being parsed.
+	  @param first The index in t of the first token to be parsed.
+	 */
+	public void shareTokens(TokenBuffer t, int first)
+	{
+		tokens = t ;
+		sharedTokens = true ;
+		firstToken = first ;
+		nextToken = first ;
+	} // end of method shareTokens
+
+	/** @return the number of nodes. */
+	public int size()
+	{
+		return size ;
+	} // end of method size
+
+	/** @return the root node, or none if the tree is empty. */
+	public int root()
+	{
+		return (size > 0) ? 0 : none ;
+	} // end of method root
+
+	/** @param n A node.
+	  @return true if the node is a terminal. */
+	public boolean isTerminal(int n)
+	{
+		return kind[n] < 0 ;
+	} // end of method isTerminal
+
+	/** @param n A node.
+	  @return the Nonterminal number of a nonterminal, or the Token symbol negated for a terminal. */
+	public int kind(int n)
+	{
+		return kind[n] ;
+	} // end of method kind
+
+	/** @param n A node.
+	  @return the Token symbol of a terminal. */
+	public int symbol(int n)
+	{
+		return -kind[n] ;
+	} // end of method symbol
+
+	/** @param n A node.
+	  @return the node's first child, or none. */
+	public int firstChild(int n)
+	{
+		return firstChild[n] ;
+	} // end of method firstChild
+
+	/** @param n A node.
+	  @return the node's next sibling, or none. */
+	public int nextSibling(int n)
+	{
+		return nextSibling[n] ;
+	} // end of method nextSibling
+
+	/** @param n A node.
+	  @return the index in tokens() of a terminal's token, or none for a nonterminal. */
+	public int tokenIndex(int n)
+	{
+		return token[n] ;
+	} // end of method tokenIndex
+
+	/** @return the tokens of the terminals in the tree. */
+	public TokenBuffer tokens()
+	{
+		return tokens ;
+	} // end of method tokens
+
+	/** @return the number of nodes left unreachable by replace(). */
+	public int garbage()
+	{
+		return garbage ;
+	} // end of method garbage
+
+	/** Finds the first terminal under a node.
+
+	  @param n A node.
+	  @return the first terminal, or none if there is none.
+	 */
+	public int firstTerminal(int n)
+	{
+		while ((n != none) && (kind[n] >= 0))
+			n = firstChild[n] ;
+		return n ;
+	} // end of method firstTerminal
+
+	/** Finds the last terminal under a node.
+
+	  @param n A node.
+	  @return the last terminal, or none if there is none.
+	 */
+	public int lastTerminal(int n)
+	{
+		while ((n != none) && (kind[n] >= 0))
+		{
+			int c = firstChild[n] ;
+			if (c != none)
+				while (nextSibling[c] != none)
+					c = nextSibling[c] ;
+			n = c ;
+		}
+		return n ;
+	} // end of method lastTerminal
+
+	/** Replaces a node other than the root, and everything under it, with the
+	  single top-level node of another tree, which is copied in.  The nodes
+	  replaced stay in the arrays, unreachable, until the next reset().  Both
+	  trees must share the same tokens.  Nodes do not record their parents,
+	  so finding what points at the node is a pass over every node: the cost
+	  is in proportion to the whole tree, not to the fragment.
+
+	  @param node The node to replace.
+	  @param fragment The tree to put in its place.
+	 */
+	public void replace(int node, SyntaxTree fragment)
+	{
+		int base = size, n = fragment.size ;
+		while (size + n > kind.length)
+		{
+			kind = grow(kind) ;
+			firstChild = grow(firstChild) ;
+			nextSibling = grow(nextSibling) ;
+			token = grow(token) ;
+		}
+		for (int i = 0 ; i < n ; i++)
+		{
+			kind[base + i] = fragment.kind[i] ;
+			firstChild[base + i] = (fragment.firstChild[i] == none) ? none : base + fragment.firstChild[i] ;
+			nextSibling[base + i] = (fragment.nextSibling[i] == none) ? none : base + fragment.nextSibling[i] ;
+			token[base + i] = fragment.token[i] ;
+		}
+		nextSibling[base] = nextSibling[node] ;
+
+		for (int i = 0 ; i < base ; i++)
+		{
+			if (firstChild[i] == node)
+				firstChild[i] = base ;
+			if (nextSibling[i] == node)
+				nextSibling[i] = base ;
+		}
+		size += n ;
+		garbage += subtreeSize(node) ;
+	} // end of method replace
+
+	/** Moves the token index of every terminal from a given index on.  This
+	  is a pass over every node, as the terminals after an edit can be
+	  anywhere in the arrays once subtrees have been replaced.
+
+	  @param from The first token index to move.
+	  @param delta How far to move it.
+	 */
+	public void shiftTokens(int from, int delta)
+	{
+		for (int i = 0 ; i < size ; i++)
+			if (token[i] >= from)
+				token[i] += delta ;
+	} // end of method shiftTokens
+
+	/** Counts the nodes in a subtree, keeping the nodes still to visit on a
+	  stack of its own rather than the thread's, however deep the tree.
+
+	  @param n The root of the subtree.
+	  @return the number of nodes.
+	 */
+	private int subtreeSize(int n)
+	{
+		int[] pending = new int[64] ;
+		int count = 0, top = 0 ;
+		pending[top++] = n ;
+		while (top > 0)
+		{
+			count++ ;
+			for (int c = firstChild[pending[--top]] ; c != none ; c = nextSibling[c])
+			{
+				if (top == pending.length)
+					pending = grow(pending) ;
+				pending[top++] = c ;
+			}
+		}
+		return count ;
+	} // end of method subtreeSize
+
+	/** Adds a node as the last child of the innermost open nonterminal.
+
+	  @param k The kind of node.
+	  @param t The token index, or none.
+	  @return the new node.
+	 */
+	private int addNode(int k, int t)
+	{
+		if (size == kind.length)
+		{
+			kind = grow(kind) ;
+			firstChild = grow(firstChild) ;
+			nextSibling = grow(nextSibling) ;
+			token = grow(token) ;
+		}
+		int n = size++ ;
+		kind[n] = k ;
+		firstChild[n] = none ;
+		nextSibling[n] = none ;
+		token[n] = t ;
+
+		if (depth == 0)
+		{
+			if (lastRoot != none)
+				nextSibling[lastRoot] = n ;
+			lastRoot = n ;
+		}
+		else
+		{
+			int last = openLastChild[depth - 1] ;
+			if (last == none)
+				firstChild[openNode[depth - 1]] = n ;
+			else
+				nextSibling[last] = n ;
+			openLastChild[depth - 1] = n ;
+		}
+		return n ;
+	} // end of method addNode
+
+	private static int[] grow(int[] a)
+	{
+		int[] larger = new int[a.length * 2] ;
+		System.arraycopy(a, 0, larger, 0, a.length) ;
+		return larger ;
+	} // end of method grow
+
+	public void insertTerminal(int symbol, CharSequence text, int lineNumber)
+	{
+		if (sharedTokens)
+			addNode(-symbol, nextToken++) ;
+		else
+		{
+			tokens.add(symbol, text, lineNumber) ;
+			addNode(-symbol, tokens.size() - 1) ;
+		}
+	} // end of method insertTerminal
+
+	public void commenceNonterminal(String name)
+	{
+		int n = addNode(Nonterminal.getId(name), none) ;
+		if (depth == openNode.length)
+		{
+			openNode = grow(openNode) ;
+			openLastChild = grow(openLastChild) ;
+		}
+		openNode[depth] = n ;
+		openLastChild[depth] = none ;
+		depth++ ;
+	} // end of method commenceNonterminal
+
+	public void finishNonterminal(String name)
+	{
+		if (depth > 0)
+			depth-- ;
+	} // end of method finishNonterminal
+
+	public void reportSuccess()
+	{
+	} // end of method reportSuccess
+
+	public void flush()
+	{
+	} // end of method flush
+
+	public void close()
+	{
+	} // end of method close
+} // end of class SyntaxTree
@@ -0,0 +1,450 @@
+/**
+ *
+ * Table-driven syntax analyser for 254 exercise.
+ *
+ * Parses the same language as SyntaxAnalyser, sending the same events and
+ * reporting errors in the same words, but by a single loop over an explicit
+ * stack, driven by the LL(1) tables that GrammarCompiler makes from
+ * SyntaxAnalyser.grammar, rather than by a method per nonterminal.
+ *
+ * The productions are laid end to end in one array, each item coded with
+ * what kind of item it is and whether it is the last of its production, and
+ * each production followed by an end mark.  The parser keeps its place in
+ * that array, and moves it on as each item is matched.  A production chosen
+ * for a nonterminal is started at once; only if the nonterminal is not the
+ * last item of its own production, or sends events, is the place to come
+ * back to pushed on the stack, so the stack holds nothing but those places.
+ * Alongside is a stack of the nonterminals being parsed, each finished when
+ * the stack falls back to where it was when the nonterminal began.
+ *
+ * Errors are found by looking up the table, not by catching exceptions:
+ * when one is found the message for the point reached in each nonterminal
+ * is found from the item before its place, and the messages are gathered
+ * into the chain of exceptions that the recursive methods would have
+ * thrown, and only then is anything thrown.
+ *
+ **/
+
+import java.io.* ;
+import java.util.Arrays ;
+
+public class TableSyntaxAnalyser extends AbstractSyntaxAnalyser
+{
+	/* How an item is coded in productionItems: the number of the terminal, of
+	  the nonterminal, or of the action counting from actionBase, with flags. */
+	private static final int value = 0xff ;
+	private static final int last = 1 << 8 ;
+	private static final int nonterminal = 1 << 9 ;
+	private static final int named = 1 << 10 ;
+	private static final int action = 1 << 11 ;
+
+	/** The end mark after each production in productionItems. */
+	private static final int endMark = -1 ;
+
+	/** The next tokens that can be looked up in entries are below this. */
+	private static final int entryWidth = 64 ;
+
+	/* Every production's items in the order they are matched, each production
+	  followed by endMark, and the message explaining errors passing out through
+	  each item.  First comes the start nonterminal, as if the only item of a
+	  production of its own. */
+	private static final int[] productionItems ;
+	private static final int[] productionTags ;
+
+	/** Where to start in productionItems for each nonterminal and next token,
+	  at nonterminal * entryWidth + token: 0 for an empty production, or -1 for
+	  an error. */
+	private static final int[] entries ;
+
+	static
+	{
+		if (ParseTable.terminalCount > entryWidth)
+			throw new IllegalStateException("too many terminals for the table") ;
+
+		int size = 3 ;
+		for (int[] alternative : ParseTable.items)
+			size += alternative.length + 1 ;
+		productionItems = new int[size] ;
+		productionTags = new int[size] ;
+		productionItems[0] = endMark ;
+		productionTags[0] = -1 ;
+		productionItems[1] = code(ParseTable.terminalCount + ParseTable.start, true) ;
+		productionTags[1] = -1 ;
+		productionItems[2] = endMark ;
+
+		int[] starts = new int[ParseTable.items.length] ;
+		int next = 3 ;
+		for (int p = 0 ; p < ParseTable.items.length ; p++)
+		{
+			int[] alternative = ParseTable.items[p] ;
+			starts[p] = (alternative.length == 0) ? 0 : next ;
+			// the tables list the items last first
+			for (int i = alternative.length - 1 ; i >= 0 ; i--)
+			{
+				productionItems[next] = code(alternative[i], i == 0) ;
+				productionTags[next] = ParseTable.tags[p][i] ;
+				next++ ;
+			}
+			productionItems[next++] = endMark ;
+		}
+
+		// @skipStrays parses again the statement list straight before it
+		int skipStrays = code(ParseTable.skipStrays, false) ;
+		int statementList = code(ParseTable.terminalCount + indexOf(ParseTable.names, "<statement list>"), false) ;
+		for (int i = 0 ; i < size ; i++)
+			if (((productionItems[i] & ~last) == skipStrays) && ((productionItems[i - 1] & ~last) != statementList))
+				throw new IllegalStateException("@skipStrays does not follow <statement list>") ;
+
+		entries = new int[ParseTable.nonterminalCount * entryWidth] ;
+		Arrays.fill(entries, -1) ;
+		for (int n = 0 ; n < ParseTable.nonterminalCount ; n++)
+			for (int symbol = 0 ; symbol < ParseTable.terminalCount ; symbol++)
+			{
+				int production = ParseTable.table[n][symbol] ;
+				if (production >= 0)
+					entries[n * entryWidth + symbol] = starts[production] ;
+			}
+	}
+
+	/** The name of the file, for error messages. */
+	private final String filename ;
+
+	/* The places to come back to in productionItems, topmost last, and how
+	  many there are.  While an error is dealt with, the place reached is on
+	  top of them. */
+	private int[] items = new int[256] ;
+	private int itemCount ;
+
+	/* The nonterminals being parsed, innermost last: the number of each, and
+	  the number of places in items when it began. */
+	private int[] frames = new int[64] ;
+	private int[] frameEnds = new int[64] ;
+	private int frameCount ;
+
+	/** Creates an analyser which reads the given file.
+
+	  @param fileName The file to parse.
+	  @param memoryMapped true to scan the file through a memory-mapped buffer.
+	  @throws IOException if the file cannot be read.
+	 */
+	public TableSyntaxAnalyser(String fileName, boolean memoryMapped) throws IOException
+	{
+		filename = new File(fileName).getName() ;
+		sourceName = filename ;
+		lex = new LexicalAnalyser(fileName, memoryMapped) ;
+	} // end of constructor method
+
+	/** Creates an analyser for a file that has already been tokenised.
+
+	  @param fileName The name of the file the tokens came from.
+	  @param tokens Every token of the file, up to and including end of file.
+	 */
+	public TableSyntaxAnalyser(String fileName, TokenBuffer tokens)
+	{
+		filename = new File(fileName).getName() ;
+		sourceName = filename ;
+		this.tokens = tokens ;
+	} // end of constructor method
+
+	public void acceptTerminal(int symbol) throws IOException, CompilationException
+	{
+		if (nextToken.symbol == symbol)
+		{
+			insertNextToken() ;
+			readNextToken() ;
+		}
+		else
+			myGenerate.reportError(new Diagnostic(nextToken, symbol, filename), null) ;
+	} // end of method acceptTerminal
+
+	/** Parses the whole source, as <statement part>.
+
+	  @throws IOException if the source cannot be read.
+	  @throws CompilationException for an error that is not recovered from.
+	 */
+	public void _statementPart_() throws IOException, CompilationException
+	{
+		final int[] productionItems = TableSyntaxAnalyser.productionItems ;
+		final int[] entries = TableSyntaxAnalyser.entries ;
+		final String[] names = ParseTable.names ;
+
+		int[] items = this.items ;
+		int count = 0 ;
+		int frameEnd = -1 ;
+		int place = 1 ;
+		frameCount = 0 ;
+
+		while (true)
+		{
+			int code = productionItems[place++] ;
+
+			if (code < nonterminal)
+			{
+				if (nextToken.symbol == (code & value))
+				{
+					insertNextToken() ;
+					readNextToken() ;
+					if ((code & last) == 0)
+						continue ;
+				}
+				else
+				{
+					mismatch(code & value, count, place) ;
+					items = this.items ;
+					count = itemCount ;
+					frameEnd = frameEnds[frameCount - 1] ;
+				}
+			}
+			else if (code < action)
+			{
+				int n = code & value ;
+				int symbol = nextToken.symbol ;
+				int start = ((symbol >= 0) && (symbol < entryWidth)) ? entries[n * entryWidth + symbol] : -1 ;
+				if ((code & named) != 0)
+				{
+					myGenerate.commenceNonterminal(names[n]) ;
+					if (count == items.length)
+						this.items = items = grow(items) ;
+					items[count++] = place ;
+					openFrame(n, count) ;
+					frameEnd = count ;
+					if (start > 0)
+					{
+						place = start ;
+						continue ;
+					}
+				}
+				else if (start > 0)
+				{
+					// the nonterminal's place is wanted only if there is more to come after it
+					if ((code & last) == 0)
+					{
+						if (count == items.length)
+							this.items = items = grow(items) ;
+						items[count++] = place ;
+					}
+					place = start ;
+					continue ;
+				}
+				else if ((start == 0) && ((code & last) == 0))
+					continue ;
+
+				if (start < 0)
+				{
+					noProduction(n, count, ((code & named) != 0) ? -1 : place) ;
+					items = this.items ;
+					count = itemCount ;
+					frameEnd = frameEnds[frameCount - 1] ;
+				}
+			}
+			else
+			{
+				// @skipStrays: a statement list stopped early on a token that ends a block
+				if (!recovering() || (nextToken.symbol == Token.endSymbol) || (nextToken.symbol == Token.eofSymbol))
+					continue ;
+				if (skipStray(count, place))
+				{
+					// back to the statement list, which comes straight before
+					place -= 2 ;
+					continue ;
+				}
+				items = this.items ;
+				count = itemCount ;
+				frameEnd = frameEnds[frameCount - 1] ;
+			}
+
+			// the production is finished: go back to the place it was started from,
+			// finishing each nonterminal that began there
+			do
+			{
+				while (count == frameEnd)
+				{
+					frameCount-- ;
+					myGenerate.finishNonterminal(names[frames[frameCount]]) ;
+					frameEnd = (frameCount > 0) ? frameEnds[frameCount - 1] : -1 ;
+				}
+				if (count == 0)
+					return ;
+				place = items[--count] ;
+			}
+			while (productionItems[place] == endMark) ;
+		}
+	} // end of method _statementPart_
+
+	private void mismatch(int terminal, int count, int place) throws IOException, CompilationException
+	{
+		failAt(new DiagnosticException(new Diagnostic(nextToken, terminal, filename)), count, place) ;
+	} // end of method mismatch
+
+	private void noProduction(int n, int count, int place) throws IOException, CompilationException
+	{
+		failAt(new DiagnosticException(expected(ParseTable.expectMessages[n])), count, place) ;
+	} // end of method noProduction
+
+	/** Skips a stray token that ends a block, as an error.
+
+	  @param count The number of places in items.
+	  @param place The place reached.
+	  @return true if the statement list is to be parsed again, or false if
+	  the error limit was reached and the error has been recovered from
+	  further out.
+	  @throws IOException if the source cannot be read.
+	  @throws CompilationException if the error is not recovered from.
+	 */
+	private boolean skipStray(int count, int place) throws IOException, CompilationException
+	{
+		try
+		{
+			recover(null, new Diagnostic(nextToken, Token.endSymbol, filename)) ;
+			readNextToken() ;
+			return true ;
+		}
+		catch (CompilationException e)
+		{
+			failAt(e, count, place) ;
+			return false ;
+		}
+	} // end of method skipStray
+
+	/** Lays out the stack as fail() expects, with the place reached on top.
+
+	  @param e The error.
+	  @param count The number of places in items.
+	  @param place The place reached, or -1 if the innermost nonterminal has
+	  only just begun.
+	  @throws IOException if the source cannot be read while recovering.
+	  @throws CompilationException if the error is not recovered from.
+	 */
+	private void failAt(CompilationException e, int count, int place) throws IOException, CompilationException
+	{
+		itemCount = count ;
+		if (place >= 0)
+		{
+			if (itemCount == items.length)
+				items = grow(items) ;
+			items[itemCount++] = place ;
+		}
+		fail(e) ;
+	} // end of method failAt
+
+	/** Deals with an error as the recursive methods would: each nonterminal
+	  being parsed explains it in turn, innermost first, until one recovers
+	  from it, or if none does the whole explanation is thrown.  If one does,
+	  the stack is left ready for it to be finished.
+
+	  @param e The error.
+	  @throws IOException if the source cannot be read while recovering.
+	  @throws CompilationException if the error is not recovered from.
+	 */
+	private void fail(CompilationException e) throws IOException, CompilationException
+	{
+		int f = frameCount - 1 ;
+		while (true)
+		{
+			int recoverer = f ;
+			if (recovering())
+				while ((recoverer >= 0) && !ParseTable.recovers[frames[recoverer]])
+					recoverer-- ;
+			else
+				recoverer = -1 ;
+
+			for ( ; f > recoverer ; f--)
+			{
+				int tag = tagOf(f) ;
+				if (tag >= 0)
+					e = new DiagnosticException(expected(tag), e) ;
+			}
+			if (recoverer < 0)
+				throw e ;
+			if (errorLimitReached())
+			{
+				// as recover() would: nothing more is recovered from, so the
+				// recovering nonterminal passes this on unexplained
+				f = recoverer - 1 ;
+				continue ;
+			}
+
+			try
+			{
+				recover(e, expected(ParseTable.catchMessages[frames[recoverer]])) ;
+			}
+			catch (CompilationException limit)
+			{
+				// the error limit is reached; the recovering nonterminal passes this on unexplained
+				e = limit ;
+				f = recoverer - 1 ;
+				continue ;
+			}
+
+			// carry on from the end of the recovering nonterminal
+			itemCount = frameEnds[recoverer] ;
+			frameCount = recoverer + 1 ;
+			return ;
+		}
+	} // end of method fail
+
+	/** Finds the message that would explain an error at the point reached in
+	  a nonterminal being parsed: that of the item it last started, or if it
+	  has started none, the one for the whole nonterminal.
+
+	  @param f The place of the nonterminal in frames.
+	  @return the message, or -1 if the error passes out unexplained.
+	 */
+	private int tagOf(int f)
+	{
+		// the nonterminal's last place is the topmost below where the next one began
+		int top = (f == frameCount - 1) ? itemCount - 1 : frameEnds[f + 1] - 1 ;
+		if (top < frameEnds[f])
+			return ParseTable.catchMessages[frames[f]] ;
+		return productionTags[items[top] - 1] ;
+	} // end of method tagOf
+
+	private Diagnostic expected(int message)
+	{
+		return new Diagnostic(nextToken, ParseTable.messages[message], filename) ;
+	} // end of method expected
+
+	/** Starts parsing a nonterminal that sends events.
+
+	  @param n The nonterminal.
+	  @param itemCount The number of places in items as it begins.
+	 */
+	private void openFrame(int n, int itemCount)
+	{
+		if (frameCount == frames.length)
+		{
+			frames = grow(frames) ;
+			frameEnds = grow(frameEnds) ;
+		}
+		frames[frameCount] = n ;
+		frameEnds[frameCount] = itemCount ;
+		frameCount++ ;
+	} // end of method openFrame
+
+	/** @return the code in productionItems for an item of a production. */
+	private static int code(int item, boolean isLast)
+	{
+		int flags = isLast ? last : 0 ;
+		if (item < ParseTable.terminalCount)
+			return item | flags ;
+		int n = item - ParseTable.terminalCount ;
+		if (n < ParseTable.nonterminalCount)
+			return n | nonterminal | ((ParseTable.names[n] != null) ? named : 0) | flags ;
+		return (n - ParseTable.nonterminalCount) | action | flags ;
+	} // end of method code
+
+	private static int indexOf(String[] a, String s)
+	{
+		for (int i = 0 ; i < a.length ; i++)
+			if (s.equals(a[i]))
+				return i ;
+		throw new IllegalStateException(s + " is not in the grammar") ;
+	} // end of method indexOf
+
+	private static int[] grow(int[] a)
+	{
+		int[] larger = new int[a.length * 2] ;
+		System.arraycopy(a, 0, larger, 0, a.length) ;
+		return larger ;
+	} // end of method grow
+} // end of class TableSyntaxAnalyser
@@ -0,0 +1,54 @@
+/**
+ *
+ * Event sink for 254 exercise that passes every event on to two others.
+ *
+ **/
+
+import java.io.IOException;
+
+public class TeeEventSink implements EventSink
+{
+    private final EventSink first, second;
+
+    public TeeEventSink( EventSink first, EventSink second ) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public void insertTerminal( int symbol, CharSequence text, int lineNumber ) {
+        first.insertTerminal( symbol, text, lineNumber );
+        second.insertTerminal( symbol, text, lineNumber );
+    }
+
+    @Override
+    public void commenceNonterminal( String name ) {
+        first.commenceNonterminal( name );
+        second.commenceNonterminal( name );
+    }
+
+    @Override
+    public void finishNonterminal( String name ) {
+        first.finishNonterminal( name );
+        second.finishNonterminal( name );
+    }
+
+    @Override
+    public void reportSuccess() {
+        first.reportSuccess();
+        second.reportSuccess();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        first.flush();
+        second.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        first.close();
+        second.close();
+    }
+
+} // end of class TeeEventSink
@@ -0,0 +1,289 @@
+/**
+ *
+ * Text event sink for 254 exercise.  Writes parse events in the usual
+ * "rggTOKEN ... on line n" form, formatting each one straight into a large
+ * reusable buffer that is written out a whole batch at a time.
+ *
+ * Optionally a background thread does the writing, so the parser goes on
+ * filling a second buffer while the first is written.
+ *
+ **/
+
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class TextEventSink implements EventSink
+{
+    /** The size of each buffer, in characters. */
+    private static final int bufferSize = 1 << 16;
+    /** The most a single event is assumed to need before the buffer is written; longer ones still fit. */
+    private static final int eventReserve = 256;
+    /** The number of buffers passed between the parser and the background writer. */
+    private static final int bufferCount = 3;
+
+    private static final char[] lineSeparator = System.lineSeparator().toCharArray();
+
+    /** A full buffer on its way to the background writer, or a request to flush or stop. */
+    private static class Batch {
+        char[] chars = new char[bufferSize];
+        int length;
+        boolean flush, stop;
+    }
+
+    private final Writer writer;
+    private Batch current = new Batch();
+
+    /* Background writing: the thread, batches waiting for it, and empty ones to reuse. */
+    private Thread writerThread;
+    private BlockingQueue<Batch> full;
+    private BlockingQueue<Batch> empty;
+    /* Flush requests made and completed; guarded by this. */
+    private long flushesRequested, flushesDone;
+    /** The first error the background writer met, reported by the next flush. */
+    private volatile IOException writeError;
+
+    /**
+     * Creates a sink that writes on the calling thread
+     * @param out - where to write events
+     */
+    public TextEventSink( OutputStream out ) {
+        this( out, false );
+    }
+
+    /**
+     * Creates a sink
+     * @param out - where to write events
+     * @param background - true to write from a background thread
+     */
+    public TextEventSink( OutputStream out, boolean background ) {
+        writer = new OutputStreamWriter( out );
+        if( background ) {
+            full = new ArrayBlockingQueue<Batch>( bufferCount + 2 );
+            empty = new ArrayBlockingQueue<Batch>( bufferCount );
+            for( int i = 1; i < bufferCount; i++ )
+                empty.add( new Batch() );
+            writerThread = new Thread( this::writeBatches, "event-sink-writer" );
+            writerThread.setDaemon( true );
+            writerThread.start();
+        }
+    }
+
+    @Override
+    public void insertTerminal( int symbol, CharSequence text, int lineNumber ) {
+        reserve( text.length() );
+        append( "rggTOKEN " );
+        append( Token.getName( symbol ) );
+        if( (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) ) {
+            append( " '" );
+            append( text );
+            append( '\'' );
+        }
+        append( " on line " );
+        append( lineNumber );
+        newLine();
+    }
+
+    @Override
+    public void commenceNonterminal( String name ) {
+        reserve( name.length() );
+        append( "rggBEGIN " );
+        append( name );
+        newLine();
+    }
+
+    @Override
+    public void finishNonterminal( String name ) {
+        reserve( name.length() );
+        append( "rggEND " );
+        append( name );
+        newLine();
+    }
+
+    @Override
+    public void reportSuccess() {
+        reserve( 0 );
+        append( "rggSUCCESS" );
+        newLine();
+    }
+
+    /**
+     * Writes a line of text as it is, such as the lines Compile writes between programs
+     * @param line - the line, without a line end
+     */
+    public void writeLine( CharSequence line ) {
+        reserve( line.length() );
+        append( line );
+        newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if( writerThread == null ) {
+            writeCurrent();
+            writer.flush();
+            return;
+        }
+
+        long ticket;
+        synchronized( this ) {
+            ticket = ++flushesRequested;
+        }
+        current.flush = true;
+        handOver();
+        synchronized( this ) {
+            while( flushesDone < ticket && writerThread.isAlive() ) {
+                try {
+                    wait();
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "interrupted while flushing events" );
+                }
+            }
+        }
+        if( writeError != null )
+            throw writeError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if( writerThread != null ) {
+            current.stop = true;
+            handOver();
+            try {
+                writerThread.join();
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+    }
+
+    /**
+     * Makes sure the buffer has room for an event, writing out what it holds if not
+     * @param textLength - the length of any variable text in the event
+     */
+    private void reserve( int textLength ) {
+        if( current.length + eventReserve + textLength <= current.chars.length )
+            return;
+        if( writerThread != null ) {
+            handOver();
+        } else {
+            try {
+                writeCurrent();
+            } catch( IOException e ) {
+                writeError = e;
+                current.length = 0;
+            }
+        }
+        if( eventReserve + textLength > current.chars.length )
+            current.chars = new char[eventReserve + textLength];
+    }
+
+    /** Writes the current buffer on this thread. */
+    private void writeCurrent() throws IOException {
+        if( writeError != null ) {
+            IOException e = writeError;
+            writeError = null;
+            throw e;
+        }
+        writer.write( current.chars, 0, current.length );
+        current.length = 0;
+    }
+
+    /** Passes the current buffer to the background writer and takes an empty one. */
+    private void handOver() {
+        try {
+            full.put( current );
+            current = empty.take();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            current = new Batch();
+        }
+        current.length = 0;
+        current.flush = false;
+        current.stop = false;
+    }
+
+    /** The body of the background writer thread. */
+    private void writeBatches() {
+        while( true ) {
+            Batch batch;
+            try {
+                batch = full.take();
+            } catch( InterruptedException e ) {
+                return;
+            }
+            try {
+                if( writeError == null ) {
+                    writer.write( batch.chars, 0, batch.length );
+                    if( batch.flush )
+                        writer.flush();
+                }
+            } catch( IOException e ) {
+                writeError = e;
+            }
+            boolean flushed = batch.flush, stop = batch.stop;
+            empty.offer( batch );
+            if( flushed ) {
+                synchronized( this ) {
+                    flushesDone++;
+                    notifyAll();
+                }
+            }
+            if( stop )
+                return;
+        }
+    }
+
+    private void append( String s ) {
+        int n = s.length();
+        s.getChars( 0, n, current.chars, current.length );
+        current.length += n;
+    }
+
+    private void append( CharSequence s ) {
+        if( s instanceof String ) {
+            append( (String) s );
+            return;
+        }
+        char[] chars = current.chars;
+        int at = current.length;
+        for( int i = 0, n = s.length(); i < n; i++ )
+            chars[at++] = s.charAt( i );
+        current.length = at;
+    }
+
+    private void append( char c ) {
+        current.chars[current.length++] = c;
+    }
+
+    /** Appends a number in decimal without going through a String. */
+    private void append( int n ) {
+        if( n < 0 ) {
+            if( n == Integer.MIN_VALUE ) {
+                append( Integer.toString( n ) );
+                return;
+            }
+            append( '-' );
+            n = -n;
+        }
+        int digits = 1;
+        for( int rest = n / 10; rest > 0; rest /= 10 )
+            digits++;
+        char[] chars = current.chars;
+        int at = current.length + digits;
+        current.length = at;
+        do {
+            chars[--at] = (char) ('0' + n % 10);
+            n /= 10;
+        } while( n > 0 );
+    }
+
+    private void newLine() {
+        for( char c : lineSeparator )
+            current.chars[current.length++] = c;
+    }
+
+} // end of class TextEventSink
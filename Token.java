@@ -66,6 +66,12 @@ public class Token
 	public String text ;
 	/** The line number of the original text in the source file. */
 	public int lineNumber ;
+	/** For an identifier, the id of its text in an IdentifierPool; otherwise -1. */
+	public int identifierId = -1 ;
+	/** Where the original text starts in the source file, as LexicalAnalyser.offset()
+	  gives it, or -1 if not known.  Its line and column can be found from this
+	  with the source's LineIndex. */
+	public int offset = -1 ;
 
 	/** Constructs a new token with a given token type and line number.
 
@@ -0,0 +1,464 @@
+/**
+ *
+ * Whole-file token store for 254 exercise.
+ *
+ * Holds every token of a source file in parallel arrays of primitives, with
+ * all token text packed into one shared character buffer, so a tokenised file
+ * costs four ints per token rather than a Token and a String each.  Tokens are
+ * addressed by index, which gives the parser random-access lookahead.
+ *
+ * A buffer filled from one lexical analyser keeps where each token starts in
+ * the source rather than its line, along with the analyser's LineIndex, and
+ * works out lines and columns from that when they are asked for.  Anything
+ * that puts tokens from elsewhere into such a buffer turns the positions it
+ * holds back into line numbers first.
+ *
+ **/
+
+import java.io.* ;
+
+public class TokenBuffer
+{
+	/** The number of tokens room is made for at first. */
+	private static final int initialCapacity = 256 ;
+
+	/** The type of each token, as a class constant from Token. */
+	int[] kind = new int[initialCapacity] ;
+	/** Where each token's text starts in the text buffer. */
+	int[] start = new int[initialCapacity] ;
+	/** The length of each token's text. */
+	int[] length = new int[initialCapacity] ;
+	/** Where each token starts in the source, if lines is set, or otherwise
+	  the line number of each token. */
+	int[] position = new int[initialCapacity] ;
+	/** The line ends of the source the tokens were scanned from, or null if
+	  position holds line numbers. */
+	private LineIndex lines ;
+	/** The number of line ends before the token whose line was last asked
+	  for, tried first for the next, since tokens are mostly read in order. */
+	private int lineCursor ;
+	/** The number of tokens held. */
+	private int size ;
+
+	/** The text of every token, end to end. */
+	private char[] text = new char[initialCapacity * 4] ;
+	/** The number of characters of text held. */
+	private int textLength ;
+
+	/** The reusable view handed out by text(). */
+	private final TokenText textView = new TokenText() ;
+
+	/** A read-only view of the text of one token.  It is shared, so it only
+	  describes the token most recently asked for. */
+	private class TokenText implements CharSequence
+	{
+		private int from, count ;
+
+		public int length()
+		{
+			return count ;
+		} // end of method length
+
+		public char charAt(int index)
+		{
+			if ((index < 0) || (index >= count))
+				throw new IndexOutOfBoundsException("index " + index + ", length " + count) ;
+			return text[from + index] ;
+		} // end of method charAt
+
+		public CharSequence subSequence(int s, int e)
+		{
+			return toString().substring(s, e) ;
+		} // end of method subSequence
+
+		public String toString()
+		{
+			return new String(text, from, count) ;
+		} // end of method toString
+	} // end of class TokenText
+
+	/** Creates an empty buffer, to be filled with add(). */
+	public TokenBuffer()
+	{
+	} // end of constructor method
+
+	/** Creates an empty buffer whose tokens are slices of some source text
+	  rather than copies, to be filled with addSlice().
+
+	  @param source The source text, which is shared, not copied.
+	  @param sourceLength How much of source is text.
+	 */
+	public TokenBuffer(char[] source, int sourceLength)
+	{
+		text = source ;
+		textLength = sourceLength ;
+	} // end of constructor method
+
+	/** Tokenises the whole of the given file.
+
+	  @param fileName The file to read.
+	  @param memoryMapped true to scan the file through a memory-mapped buffer.
+	  @throws IOException if the file cannot be read.
+	 */
+	public TokenBuffer(String fileName, boolean memoryMapped) throws IOException
+	{
+		addAll(new LexicalAnalyser(fileName, memoryMapped)) ;
+	} // end of constructor method
+
+	/** Returns a buffer holding the same tokens, sharing their storage but
+	  with a text() view of its own, so that the tokens can be read on
+	  several threads at once.  Neither buffer may be changed while the other
+	  is in use.
+
+	  @return the shared copy.
+	 */
+	public TokenBuffer sharedCopy()
+	{
+		TokenBuffer copy = new TokenBuffer(text, textLength) ;
+		copy.share(this) ;
+		return copy ;
+	} // end of method sharedCopy
+
+	/** Makes this buffer a shared copy of another, as sharedCopy() would,
+	  letting go of the tokens it held, so that a copy can be kept and used
+	  again for buffer after buffer.
+
+	  @param from The buffer whose tokens are to be shared.
+	 */
+	public void share(TokenBuffer from)
+	{
+		text = from.text ;
+		textLength = from.textLength ;
+		kind = from.kind ;
+		start = from.start ;
+		length = from.length ;
+		position = from.position ;
+		lines = from.lines ;
+		lineCursor = 0 ;
+		size = from.size ;
+	} // end of method share
+
+	/** Appends every remaining token from a lexical analyser, up to and
+	  including the end of file token.  Into an empty buffer, this keeps the
+	  analyser's line index and the offset of each token.
+
+	  @param lex The analyser to drain.
+	  @throws IOException if the source cannot be read.
+	 */
+	public void addAll(LexicalAnalyser lex) throws IOException
+	{
+		boolean indexed = (size == 0) ;
+		unindex() ;
+		int k ;
+		do
+		{
+			k = lex.advance() ;
+			add(k, lex.text(), indexed ? lex.offset() : lex.line()) ;
+		}
+		while (k != Token.eofSymbol) ;
+		if (indexed)
+		{
+			lines = lex.lineIndex() ;
+			lineCursor = 0 ;
+		}
+	} // end of method addAll
+
+	/** Turns the offsets held into line numbers, if they are offsets, so
+	  that tokens from elsewhere can be added. */
+	private void unindex()
+	{
+		if (lines == null)
+			return ;
+		for (int i = 0 ; i < size ; i++)
+			position[i] = line(i) ;
+		lines = null ;
+	} // end of method unindex
+
+	/** Appends one token.
+
+	  @param k The type of symbol, typically as a class constant from Token.
+	  @param t The text of the token, which is copied.
+	  @param l The line number of the token.
+	 */
+	public void add(int k, CharSequence t, int l)
+	{
+		unindex() ;
+		if (size == kind.length)
+			resize(size * 2) ;
+
+		int n = t.length() ;
+		if (textLength + n > text.length)
+		{
+			char[] larger = new char[Math.max(text.length * 2, textLength + n)] ;
+			System.arraycopy(text, 0, larger, 0, textLength) ;
+			text = larger ;
+		}
+		if (t instanceof String)
+			((String) t).getChars(0, n, text, textLength) ;
+		else
+			for (int i = 0 ; i < n ; i++)
+				text[textLength + i] = t.charAt(i) ;
+
+		kind[size] = k ;
+		start[size] = textLength ;
+		length[size] = n ;
+		position[size] = l ;
+		textLength += n ;
+		size++ ;
+	} // end of method add
+
+	/** Appends one token whose text is already in the shared text buffer, as
+	  in a buffer made over some source text.
+
+	  @param k The type of symbol, typically as a class constant from Token.
+	  @param s Where the token's text starts in the text buffer.
+	  @param n The length of the token's text.
+	  @param l The line number of the token.
+	 */
+	public void addSlice(int k, int s, int n, int l)
+	{
+		unindex() ;
+		if (size == kind.length)
+			resize(size * 2) ;
+		kind[size] = k ;
+		start[size] = s ;
+		length[size] = n ;
+		position[size] = l ;
+		size++ ;
+	} // end of method addSlice
+
+	/** Appends a run of another buffer's tokens, copying their text, and
+	  moves them down the lines.  The other buffer must have been filled
+	  with add(), so that the text of its tokens lies end to end.
+
+	  @param other The buffer to copy from.
+	  @param from The first token to copy.
+	  @param to The token after the last one to copy.
+	  @param lineShift How many lines to add to each token's line number.
+	 */
+	public void append(TokenBuffer other, int from, int to, int lineShift)
+	{
+		int n = to - from ;
+		if (n <= 0)
+			return ;
+		unindex() ;
+		if (size + n > kind.length)
+			resize(Math.max(size + n, kind.length * 2)) ;
+
+		int textFrom = other.start[from],
+				textTo = other.start[to - 1] + other.length[to - 1] ;
+		if (textLength + textTo - textFrom > text.length)
+		{
+			char[] larger = new char[Math.max(text.length * 2, textLength + textTo - textFrom)] ;
+			System.arraycopy(text, 0, larger, 0, textLength) ;
+			text = larger ;
+		}
+		System.arraycopy(other.text, textFrom, text, textLength, textTo - textFrom) ;
+
+		System.arraycopy(other.kind, from, kind, size, n) ;
+		System.arraycopy(other.length, from, length, size, n) ;
+		int shift = textLength - textFrom ;
+		for (int i = 0 ; i < n ; i++)
+		{
+			start[size + i] = other.start[from + i] + shift ;
+			position[size + i] = other.line(from + i) + lineShift ;
+		}
+		size += n ;
+		textLength += textTo - textFrom ;
+	} // end of method append
+
+	/** Replaces a run of tokens with every token of another buffer, and moves
+	  the tokens after the run along the text and down the lines.  Both
+	  buffers must be made over the new text, as after an edit to the source.
+
+	  @param from The first token to replace.
+	  @param to The token after the last one to replace.
+	  @param middle The tokens to put in their place.
+	  @param shift How far the text of the following tokens has moved.
+	  @param lineShift How many lines the following tokens have moved down.
+	  @param source The new source text.
+	  @param sourceLength How much of source is text.
+	 */
+	public void splice(int from, int to, TokenBuffer middle, int shift, int lineShift,
+			char[] source, int sourceLength)
+	{
+		unindex() ;
+		middle.unindex() ;
+		int m = middle.size, tail = size - to, newSize = from + m + tail ;
+		if (newSize > kind.length)
+			resize(Math.max(newSize, kind.length * 2)) ;
+
+		System.arraycopy(kind, to, kind, from + m, tail) ;
+		System.arraycopy(start, to, start, from + m, tail) ;
+		System.arraycopy(length, to, length, from + m, tail) ;
+		System.arraycopy(position, to, position, from + m, tail) ;
+		for (int i = from + m ; i < newSize ; i++)
+		{
+			start[i] += shift ;
+			position[i] += lineShift ;
+		}
+
+		System.arraycopy(middle.kind, 0, kind, from, m) ;
+		System.arraycopy(middle.start, 0, start, from, m) ;
+		System.arraycopy(middle.length, 0, length, from, m) ;
+		System.arraycopy(middle.position, 0, position, from, m) ;
+		size = newSize ;
+		text = source ;
+		textLength = sourceLength ;
+	} // end of method splice
+
+	/** Drops every token from a given one on.
+
+	  @param n The number of tokens to keep.
+	 */
+	public void truncate(int n)
+	{
+		if (n < size)
+			size = n ;
+	} // end of method truncate
+
+	/** Reallocates the token arrays to exactly the given capacity.
+
+	  @param capacity The number of tokens to make room for.
+	 */
+	private void resize(int capacity)
+	{
+		int[] k = new int[capacity], s = new int[capacity],
+				n = new int[capacity], l = new int[capacity] ;
+		System.arraycopy(kind, 0, k, 0, size) ;
+		System.arraycopy(start, 0, s, 0, size) ;
+		System.arraycopy(length, 0, n, 0, size) ;
+		System.arraycopy(position, 0, l, 0, size) ;
+		kind = k ;
+		start = s ;
+		length = n ;
+		position = l ;
+	} // end of method resize
+
+	/** Empties the buffer, keeping its storage. */
+	public void clear()
+	{
+		size = 0 ;
+		textLength = 0 ;
+		lines = null ;
+	} // end of method clear
+
+	/** Trims all storage to the tokens actually held, for buffers that are to
+	  be kept around once tokenising is done. */
+	public void compact()
+	{
+		if (size < kind.length)
+			resize(Math.max(size, 1)) ;
+		if (textLength < text.length)
+		{
+			char[] exact = new char[textLength] ;
+			System.arraycopy(text, 0, exact, 0, textLength) ;
+			text = exact ;
+		}
+	} // end of method compact
+
+	/** @return the number of tokens held. */
+	public int size()
+	{
+		return size ;
+	} // end of method size
+
+	/** @param i The index of a token.
+	  @return the type of the token, as a class constant from Token. */
+	public int kind(int i)
+	{
+		return kind[i] ;
+	} // end of method kind
+
+	/** @param i The index of a token.
+	  @return where the token's text starts in chars(). */
+	public int start(int i)
+	{
+		return start[i] ;
+	} // end of method start
+
+	/** @param i The index of a token.
+	  @return the length of the token's text. */
+	public int length(int i)
+	{
+		return length[i] ;
+	} // end of method length
+
+	/** @param i The index of a token.
+	  @return the line number of the token. */
+	public int line(int i)
+	{
+		if (lines == null)
+			return position[i] ;
+		int k = lineCursor, offset = position[i] ;
+		if (!lines.isAfter(k, offset))
+		{
+			// reading on in order, the next line is the one most likely
+			k = lines.isAfter(k + 1, offset) ? k + 1 : lines.find(offset) ;
+			lineCursor = k ;
+		}
+		return lines.lineAfter(k) ;
+	} // end of method line
+
+	/** @param i The index of a token.
+	  @return where the token starts in the source, or -1 if not known. */
+	public int offset(int i)
+	{
+		return (lines == null) ? -1 : position[i] ;
+	} // end of method offset
+
+	/** @param i The index of a token.
+	  @return the column the token starts in, counting from 1, or -1 if not known. */
+	public int column(int i)
+	{
+		return (lines == null) ? -1 : lines.columnOf(position[i]) ;
+	} // end of method column
+
+	/** @return the line index that offset() refers to, or null if the tokens
+	  have no offsets. */
+	public LineIndex lineIndex()
+	{
+		return lines ;
+	} // end of method lineIndex
+
+	/** Returns the text of a token as a shared view, which is only valid until
+	  text() is next called.
+
+	  @param i The index of a token.
+	  @return the text of the token.
+	 */
+	public CharSequence text(int i)
+	{
+		textView.from = start[i] ;
+		textView.count = length[i] ;
+		return textView ;
+	} // end of method text
+
+	/** @param i The index of a token.
+	  @return a copy of the text of the token. */
+	public String textString(int i)
+	{
+		return new String(text, start[i], length[i]) ;
+	} // end of method textString
+
+	/** @param i The index of a token.
+	  @return the token as a Token object. */
+	public Token token(int i)
+	{
+		Token t = new Token(kind[i], textString(i), line(i)) ;
+		t.offset = offset(i) ;
+		return t ;
+	} // end of method token
+
+	/** @return the shared text buffer that start() and length() index into. */
+	public char[] chars()
+	{
+		return text ;
+	} // end of method chars
+
+	/** @return how much of chars() is text. */
+	public int textLength()
+	{
+		return textLength ;
+	} // end of method textLength
+} // end of class TokenBuffer
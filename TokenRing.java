@@ -0,0 +1,222 @@
+/**
+ *
+ * Pipelined token source for 254 exercise.
+ *
+ * A thread of its own drains a LexicalAnalyser into a ring of token batches
+ * while the parser reads them, so that reading and scanning a file overlap
+ * with parsing it.  There is one writer and one reader and neither takes a
+ * lock: the writer fills the batch at the tail of the ring and publishes it
+ * by moving the tail on, and the reader empties the batch at the head and
+ * hands it back by moving the head on.  A full ring holds the writer back and
+ * an empty one holds the reader back.
+ *
+ * The reader sees the tokens through a cursor, as with the lexer's own
+ * advance(), kind(), line() and text().
+ *
+ **/
+
+import java.io.* ;
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.concurrent.locks.LockSupport ;
+
+public class TokenRing implements Runnable
+{
+	/** The number of tokens the writer puts in a batch before publishing it. */
+	public static final int defaultBatchSize = 512 ;
+	/** The number of batches in the ring, a power of two. */
+	public static final int defaultBatches = 16 ;
+
+	/** How many times a waiting thread spins before it starts to sleep. */
+	private static final int spinLimit = 200 ;
+	/** How long a waiting thread sleeps at a time, in nanoseconds. */
+	private static final long sleepNanos = 20000 ;
+
+	/** The lexer, which only the writer touches once the ring is started. */
+	private final LexicalAnalyser lex ;
+	/** The batches, used in turn. */
+	private final TokenBuffer[] batches ;
+	/** The batch count less one, to turn a position into an index. */
+	private final int mask ;
+	/** The most tokens in a batch. */
+	private final int batchSize ;
+
+	/** The number of batches published; only the writer moves it. */
+	private final AtomicLong tail = new AtomicLong() ;
+	/** The number of batches handed back; only the reader moves it. */
+	private final AtomicLong head = new AtomicLong() ;
+	/** Set by the reader to stop the writer before the end of file. */
+	private volatile boolean closed ;
+	/** Why the writer stopped before the end of file; set after its last batch is published. */
+	private volatile Throwable failure ;
+	/** The writer thread, once started. */
+	private Thread writer ;
+
+	/* The reader's place: the batch it is in, and the token in that batch. */
+	private TokenBuffer current ;
+	private int index ;
+
+	/** Creates a ring of the default size over a lexer.
+
+	  @param lex The lexer to drain, which must not be used by anything else.
+	 */
+	public TokenRing(LexicalAnalyser lex)
+	{
+		this(lex, defaultBatches, defaultBatchSize) ;
+	} // end of constructor method
+
+	/** Creates a ring over a lexer.
+
+	  @param lex The lexer to drain, which must not be used by anything else.
+	  @param batchCount The number of batches, a power of two.
+	  @param batchSize The most tokens in a batch.
+	 */
+	public TokenRing(LexicalAnalyser lex, int batchCount, int batchSize)
+	{
+		if ((batchCount < 2) || ((batchCount & (batchCount - 1)) != 0))
+			throw new IllegalArgumentException("batch count " + batchCount + " is not a power of two") ;
+		this.lex = lex ;
+		this.batchSize = batchSize ;
+		batches = new TokenBuffer[batchCount] ;
+		for (int i = 0 ; i < batchCount ; i++)
+			batches[i] = new TokenBuffer() ;
+		mask = batchCount - 1 ;
+	} // end of constructor method
+
+	/** Starts the writer thread. */
+	public void start()
+	{
+		writer = new Thread(this, "lexer") ;
+		writer.setDaemon(true) ;
+		writer.start() ;
+	} // end of method start
+
+	/** Stops the writer, if it has not finished, and lets it go.  The reader
+	  must not use the ring after this. */
+	public void close()
+	{
+		closed = true ;
+		if (writer != null)
+			LockSupport.unpark(writer) ;
+	} // end of method close
+
+	/** The writer: lexes batch after batch into the ring until end of file. */
+	public void run()
+	{
+		long t = 0, handedBack = 0 ;
+		try
+		{
+			int k ;
+			do
+			{
+				// wait for the reader to hand back the batch to be filled
+				for (int spins = 0 ; (t - handedBack == batches.length) && !closed ; spins++)
+				{
+					handedBack = head.get() ;
+					if (t - handedBack == batches.length)
+						pause(spins) ;
+				}
+
+				TokenBuffer batch = batches[(int) t & mask] ;
+				batch.clear() ;
+				try
+				{
+					do
+					{
+						k = lex.advance() ;
+						batch.add(k, lex.text(), lex.line()) ;
+					}
+					while ((k != Token.eofSymbol) && (batch.size() < batchSize)) ;
+				}
+				finally
+				{
+					// what was lexed before a failure is still read before it
+					if (batch.size() > 0)
+						tail.set(++t) ;
+				}
+			}
+			while ((k != Token.eofSymbol) && !closed) ;
+		}
+		catch (Throwable e)
+		{
+			failure = e ;
+		}
+	} // end of method run
+
+	/** Moves the reader on to the next token.  At end of file it stays there.
+
+	  @return the type of the token, as a class constant from Token.
+	  @throws IOException if the writer could not read the source.
+	 */
+	public int advance() throws IOException
+	{
+		if (current != null)
+		{
+			if (index + 1 < current.size())
+				return current.kind(++index) ;
+			if (current.kind(index) == Token.eofSymbol)
+				return Token.eofSymbol ;
+			head.lazySet(head.get() + 1) ;
+		}
+		current = take() ;
+		index = 0 ;
+		return current.kind(0) ;
+	} // end of method advance
+
+	/** Waits for the writer to publish the batch at the head of the ring.
+
+	  @return the batch.
+	  @throws IOException if the writer stopped with an error instead.
+	 */
+	private TokenBuffer take() throws IOException
+	{
+		long h = head.get() ;
+		for (int spins = 0 ; tail.get() == h ; spins++)
+		{
+			Throwable e = failure ;
+			if (e != null)
+			{
+				if (tail.get() != h)
+					break ;
+				if (e instanceof IOException)
+					throw (IOException) e ;
+				if (e instanceof RuntimeException)
+					throw (RuntimeException) e ;
+				if (e instanceof Error)
+					throw (Error) e ;
+				throw new IOException(e) ;
+			}
+			pause(spins) ;
+		}
+		return batches[(int) h & mask] ;
+	} // end of method take
+
+	/** Waits a little, spinning at first and then sleeping.
+
+	  @param spins How many times the caller has waited already.
+	 */
+	private static void pause(int spins)
+	{
+		if (spins < spinLimit)
+			Thread.onSpinWait() ;
+		else
+			LockSupport.parkNanos(sleepNanos) ;
+	} // end of method pause
+
+	/** @return the type of the reader's token. */
+	public int kind()
+	{
+		return current.kind(index) ;
+	} // end of method kind
+
+	/** @return the line number of the reader's token. */
+	public int line()
+	{
+		return current.line(index) ;
+	} // end of method line
+
+	/** @return the text of the reader's token, as a view that is only valid until the reader moves on. */
+	public CharSequence text()
+	{
+		return current.text(index) ;
+	} // end of method text
+} // end of class TokenRing
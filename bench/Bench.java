@@ -0,0 +1,162 @@
+/**
+ *
+ * Benchmark harness for 254 exercise.
+ *
+ * Runs each benchmark for a warm-up period, then for a number of timed
+ * iterations, and reports how many units of work (tokens, statements,
+ * events, errors) it got through per second, the time per unit and the bytes
+ * allocated per unit by the benchmark's thread.
+ *
+ **/
+
+import java.lang.management.ManagementFactory ;
+import java.util.ArrayList ;
+import java.util.List ;
+
+public class Bench
+{
+	/** One benchmark: a piece of work repeated for as long as it is timed. */
+	public interface Benchmark
+	{
+		/** Does the work once.
+
+		  @return the number of units of work done.
+		  @throws Exception if the work fails, which ends the run.
+		 */
+		long run() throws Exception ;
+	} // end of interface Benchmark
+
+	/* The benchmarks, in the order they run. */
+	private final List<String> names = new ArrayList<String>() ;
+	private final List<String> units = new ArrayList<String>() ;
+	private final List<Benchmark> benchmarks = new ArrayList<Benchmark>() ;
+
+	/* How long to warm up and to time each iteration, in milliseconds, and how many iterations. */
+	private long warmupMillis = 2000,
+			iterationMillis = 1000 ;
+	private int iterations = 5 ;
+	/** Only benchmarks whose names contain one of these are run; all are if it is empty. */
+	private final List<String> filters = new ArrayList<String>() ;
+
+	/** Counts what a benchmark returns, so the work cannot be optimised away. */
+	public static volatile long blackhole ;
+
+	/** The thread bean, if it can measure allocation. */
+	private final com.sun.management.ThreadMXBean threads ;
+
+	/** Creates a harness, taking its settings from the command line.
+
+	  @param args "-warmup=ms", "-time=ms", "-iterations=n", and names to run.
+	 */
+	public Bench(String[] args)
+	{
+		for (String arg : args)
+			if (arg.startsWith("-warmup="))
+				warmupMillis = Long.parseLong(arg.substring(8)) ;
+			else if (arg.startsWith("-time="))
+				iterationMillis = Long.parseLong(arg.substring(6)) ;
+			else if (arg.startsWith("-iterations="))
+				iterations = Integer.parseInt(arg.substring(12)) ;
+			else
+				filters.add(arg) ;
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean() ;
+		com.sun.management.ThreadMXBean t = null ;
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			t = (com.sun.management.ThreadMXBean) bean ;
+			if (t.isThreadAllocatedMemorySupported())
+				t.setThreadAllocatedMemoryEnabled(true) ;
+			else
+				t = null ;
+		}
+		threads = t ;
+	} // end of constructor method
+
+	/** Adds a benchmark.
+
+	  @param name The name it is reported and chosen by.
+	  @param unit What the numbers it returns count.
+	  @param b The benchmark.
+	 */
+	public void add(String name, String unit, Benchmark b)
+	{
+		names.add(name) ;
+		units.add(unit) ;
+		benchmarks.add(b) ;
+	} // end of method add
+
+	/** Runs every chosen benchmark and prints a line of results for each.
+
+	  @throws Exception if a benchmark fails.
+	 */
+	public void runAll() throws Exception
+	{
+		System.out.printf("%-24s %16s %12s %14s %10s%n", "benchmark", "units/s", "+/-", "ns/unit", "B/unit") ;
+		for (int i = 0 ; i < benchmarks.size() ; i++)
+			if (chosen(names.get(i)))
+				run(names.get(i), units.get(i), benchmarks.get(i)) ;
+	} // end of method runAll
+
+	private boolean chosen(String name)
+	{
+		if (filters.isEmpty())
+			return true ;
+		for (String f : filters)
+			if (name.contains(f))
+				return true ;
+		return false ;
+	} // end of method chosen
+
+	/** Warms up and times one benchmark. */
+	private void run(String name, String unit, Benchmark b) throws Exception
+	{
+		timed(b, warmupMillis) ;
+
+		double[] rate = new double[iterations] ;
+		long totalUnits = 0, totalNanos = 0, totalBytes = 0 ;
+		for (int i = 0 ; i < iterations ; i++)
+		{
+			long bytes = allocated() ;
+			long start = System.nanoTime() ;
+			long done = timed(b, iterationMillis) ;
+			long nanos = System.nanoTime() - start ;
+			totalBytes += allocated() - bytes ;
+			totalUnits += done ;
+			totalNanos += nanos ;
+			rate[i] = done * 1e9 / nanos ;
+		}
+
+		double mean = 0, spread = 0 ;
+		for (double r : rate)
+			mean += r / iterations ;
+		for (double r : rate)
+			spread += (r - mean) * (r - mean) ;
+		spread = (iterations > 1) ? Math.sqrt(spread / (iterations - 1)) : 0 ;
+
+		String perUnit = (threads == null) ? "-" : String.format("%.1f", (double) totalBytes / totalUnits) ;
+		System.out.printf("%-24s %16.0f %12.0f %14.2f %10s  (%s)%n", name, mean, spread,
+				(double) totalNanos / totalUnits, perUnit, unit) ;
+	} // end of method run
+
+	/** Runs a benchmark over and over for a given time.
+
+	  @return the units of work done.
+	 */
+	private static long timed(Benchmark b, long millis) throws Exception
+	{
+		long end = System.nanoTime() + millis * 1000000L ;
+		long done = 0 ;
+		do
+			done += b.run() ;
+		while (System.nanoTime() < end) ;
+		blackhole += done ;
+		return done ;
+	} // end of method timed
+
+	/** @return the bytes allocated so far by this thread, or 0 if that is not known. */
+	private long allocated()
+	{
+		return (threads == null) ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId()) ;
+	} // end of method allocated
+} // end of class Bench
@@ -0,0 +1,261 @@
+/**
+ *
+ * Benchmarks of the lexer, parser and generator for 254 exercise.
+ *
+ * Each benchmark works on a program generated from one kind of statement, or
+ * a mix of all of them, written to a temporary file.  Run with "make bench";
+ * names given on the command line pick out the benchmarks to run, as in
+ * "make bench BENCH=parse/".
+ *
+ **/
+
+import java.io.* ;
+import java.nio.file.Files ;
+import java.nio.file.Path ;
+import java.util.concurrent.ForkJoinPool ;
+
+public class CompilerBenchmarks
+{
+	/** The number of statements in each generated program. */
+	private static final int statementCount = 2000 ;
+
+	/** A statement of each kind, by the name of its benchmark. */
+	private static final String[][] statements =
+	{
+		{ "assignment", "x := a + b * (c - 1)" },
+		{ "if", "if a < b then x := 1 else x := 2 end if" },
+		{ "while", "while a < b loop x := x + 1 end loop" },
+		{ "for", "for (i := 1 ; i < n ; i := i + 1) do x := x + i end loop" },
+		{ "until", "do x := x + 1 until x > 10" },
+		{ "call", "call put(a, b, c)" }
+	} ;
+
+	/** Text for the comments and strings of a program where they come in long runs. */
+	private static final String runOfText = "the sort of run of text found in a comment or a message to print" ;
+
+	/** A sink that throws every event away, so only the parser is timed. */
+	private static class NullSink implements EventSink
+	{
+		long events ;
+
+		public void insertTerminal(int symbol, CharSequence text, int lineNumber)
+		{
+			events++ ;
+		} // end of method insertTerminal
+
+		public void commenceNonterminal(String name)
+		{
+			events++ ;
+		} // end of method commenceNonterminal
+
+		public void finishNonterminal(String name)
+		{
+			events++ ;
+		} // end of method finishNonterminal
+
+		public void reportSuccess()
+		{
+			events++ ;
+		} // end of method reportSuccess
+
+		public void flush()
+		{
+		} // end of method flush
+
+		public void close()
+		{
+		} // end of method close
+	} // end of class NullSink
+
+	private static final PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream()) ;
+
+	private static Path directory ;
+
+	public static void main(String[] args) throws Exception
+	{
+		directory = Files.createTempDirectory("bench") ;
+		try
+		{
+			addAll(new Bench(args)).runAll() ;
+		}
+		finally
+		{
+			for (File f : directory.toFile().listFiles())
+				f.delete() ;
+			directory.toFile().delete() ;
+		}
+	} // end of main method
+
+	private static Bench addAll(Bench bench) throws IOException
+	{
+		String mixed = program("mixed", mixedStatements(), statementCount) ;
+		final int tokenCount = new TokenBuffer(mixed, false).size() ;
+
+		// the lexer on its own, through each kind of input and each interface
+		bench.add("lex/reader", "tokens", () -> lex(new LexicalAnalyser(mixed))) ;
+		bench.add("lex/mapped", "tokens", () -> lex(new LexicalAnalyser(mixed, true))) ;
+		bench.add("lex/mapped-scalar", "tokens", () ->
+		{
+			LexicalAnalyser lex = new LexicalAnalyser(mixed, true) ;
+			lex.setWordScanning(false) ;
+			return lex(lex) ;
+		}) ;
+		// word scanning only pays where blanks, comments and strings come in long runs
+		String commented = program("commented", new String[]
+		{
+			"-- " + runOfText + "\n\t" + "x := a + b",
+			"call put(\"" + runOfText + "\")"
+		}, statementCount) ;
+		bench.add("lex/mapped-commented", "tokens", () -> lex(new LexicalAnalyser(commented, true))) ;
+		bench.add("lex/mapped-commented-scalar", "tokens", () ->
+		{
+			LexicalAnalyser lex = new LexicalAnalyser(commented, true) ;
+			lex.setWordScanning(false) ;
+			return lex(lex) ;
+		}) ;
+		bench.add("lex/chunked", "tokens", () ->
+				new ChunkedLexer(mixed, 16 << 10).tokenise(ForkJoinPool.commonPool()).size()) ;
+		bench.add("lex/getNextToken", "tokens", () ->
+		{
+			LexicalAnalyser lex = new LexicalAnalyser(mixed) ;
+			long n = 0 ;
+			while (lex.getNextToken().symbol != Token.eofSymbol)
+				n++ ;
+			return n + 1 ;
+		}) ;
+
+		// the parser on its own, over tokens already in a buffer, for each kind of statement
+		for (String[] s : statements)
+		{
+			TokenBuffer tokens = new TokenBuffer(program(s[0], new String[] { s[1] }, statementCount), false) ;
+			bench.add("parse/" + s[0], "statements", () -> parse(new SyntaxAnalyser("bench", tokens))) ;
+		}
+		TokenBuffer mixedTokens = new TokenBuffer(mixed, false) ;
+		bench.add("parse/mixed", "statements", () -> parse(new SyntaxAnalyser("bench", mixedTokens))) ;
+		bench.add("parse/table-mixed", "statements", () -> parse(new TableSyntaxAnalyser("bench", mixedTokens))) ;
+		bench.add("parse/split-mixed", "statements", () ->
+				parse(new ParallelSyntaxAnalyser("bench", mixedTokens, ForkJoinPool.commonPool()))) ;
+
+		// the generator and text output, fed with the events of a finished parse
+		IncrementalAnalyser analysed = new IncrementalAnalyser(mixed) ;
+		NullSink counter = new NullSink() ;
+		analysed.writeEvents(counter) ;
+		final long eventCount = counter.events ;
+		bench.add("sink/text", "events", () ->
+		{
+			TextEventSink sink = new TextEventSink(OutputStream.nullOutputStream()) ;
+			analysed.writeEvents(sink) ;
+			sink.flush() ;
+			return eventCount ;
+		}) ;
+		bench.add("sink/text-background", "events", () ->
+		{
+			TextEventSink sink = new TextEventSink(OutputStream.nullOutputStream(), true) ;
+			analysed.writeEvents(sink) ;
+			sink.close() ;
+			return eventCount ;
+		}) ;
+		bench.add("sink/binary", "events", () ->
+		{
+			BinaryEventSink sink = new BinaryEventSink(OutputStream.nullOutputStream()) ;
+			analysed.writeEvents(sink) ;
+			sink.flush() ;
+			return eventCount ;
+		}) ;
+		ByteArrayOutputStream trace = new ByteArrayOutputStream() ;
+		BinaryEventSink traceSink = new BinaryEventSink(trace) ;
+		analysed.writeEvents(traceSink) ;
+		traceSink.flush() ;
+		bench.add("decode/binary", "events", () ->
+		{
+			new BinaryTraceDecoder(new ByteArrayInputStream(trace.toByteArray()))
+					.decode(new TextEventSink(OutputStream.nullOutputStream())) ;
+			return eventCount ;
+		}) ;
+
+		// the whole of a compile: lexing, parsing, generating and writing text
+		bench.add("compile/mixed", "tokens", () ->
+		{
+			new SyntaxAnalyser(mixed).parse(nowhere, nowhere) ;
+			return tokenCount ;
+		}) ;
+		bench.add("compile/pipelined", "tokens", () ->
+		{
+			SyntaxAnalyser syn = new SyntaxAnalyser(mixed) ;
+			syn.setPipelined(true) ;
+			syn.parse(nowhere, nowhere) ;
+			return tokenCount ;
+		}) ;
+
+		// the error path: the first error in a program, then every error with recovery
+		String broken = program("broken", new String[] { "x := a +", "call put(a b)", "if a then x := 1 end if" },
+				statementCount / 10) ;
+		TokenBuffer brokenTokens = new TokenBuffer(broken, false) ;
+		bench.add("error/first", "errors", () ->
+		{
+			new SyntaxAnalyser(broken, brokenTokens).parse(nowhere, nowhere) ;
+			return 1 ;
+		}) ;
+		bench.add("error/recover", "errors", () ->
+		{
+			SyntaxAnalyser syn = new SyntaxAnalyser(broken, brokenTokens) ;
+			syn.setEventSink(new NullSink()) ;
+			syn.setErrorRecovery(Integer.MAX_VALUE) ;
+			syn.parse(nowhere, nowhere) ;
+			return syn.getDiagnostics().size() ;
+		}) ;
+		return bench ;
+	} // end of method addAll
+
+	/** Reads every token from a lexer through its cursor.
+
+	  @return the number of tokens.
+	 */
+	private static long lex(LexicalAnalyser lex) throws IOException
+	{
+		long n = 1 ;
+		while (lex.advance() != Token.eofSymbol)
+			n++ ;
+		return n ;
+	} // end of method lex
+
+	/** Runs a parser over a buffer of tokens, throwing the events away.
+
+	  @return the number of statements, taken to be one per semicolon plus one.
+	 */
+	private static long parse(AbstractSyntaxAnalyser syn) throws IOException
+	{
+		syn.setEventSink(new NullSink()) ;
+		syn.parse(nowhere, nowhere) ;
+		return statementCount ;
+	} // end of method parse
+
+	private static String[] mixedStatements()
+	{
+		String[] s = new String[statements.length] ;
+		for (int i = 0 ; i < s.length ; i++)
+			s[i] = statements[i][1] ;
+		return s ;
+	} // end of method mixedStatements
+
+	/** Writes a program made of the given statements in turn.
+
+	  @param name The name of the file.
+	  @param body The statements to repeat.
+	  @param count How many statements to write.
+	  @return the path of the file.
+	 */
+	private static String program(String name, String[] body, int count) throws IOException
+	{
+		StringBuilder text = new StringBuilder("begin\n") ;
+		for (int i = 0 ; i < count ; i++)
+		{
+			text.append('\t').append(body[i % body.length]) ;
+			text.append((i < count - 1) ? " ;\t-- statement " + i + "\n" : "\n") ;
+		}
+		text.append("end\n") ;
+		Path file = directory.resolve(name) ;
+		Files.write(file, text.toString().getBytes()) ;
+		return file.toString() ;
+	} // end of method program
+} // end of class CompilerBenchmarks
@@ -0,0 +1,247 @@
+/**
+ *
+ * Compile daemon tests for 254 exercise.
+ *
+ * Starts a daemon on a Unix-domain socket in a temporary directory and sends
+ * it one program after another, each with identifiers none of the others
+ * has, and checks that what the daemon holds on to does not grow with them:
+ * the identifiers of each program must go into its worker's own pool, which
+ * is emptied between programs, and never into the pool shared across the
+ * JVM.  A second daemon, on a loopback port, must refuse FILE and SHUTDOWN,
+ * which any local user could send it, and go on compiling source sent
+ * after them.  A third, with one thread, must close a connection left
+ * quiet for longer than its idle limit, so that a client queued behind it
+ * is served.  Exits with status 1 if any check fails.
+ *
+ **/
+
+import java.io.* ;
+import java.net.InetAddress ;
+import java.net.InetSocketAddress ;
+import java.net.ServerSocket ;
+import java.net.SocketAddress ;
+import java.net.StandardProtocolFamily ;
+import java.net.UnixDomainSocketAddress ;
+import java.nio.channels.Channels ;
+import java.nio.channels.SocketChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.Files ;
+import java.nio.file.Path ;
+
+public class CompileDaemonTest
+{
+	/** How many programs to send. */
+	private static final int programCount = 40 ;
+	/** How many new identifiers each program has. */
+	private static final int identifiersPerProgram = 500 ;
+
+	private static int failures ;
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("compiledaemon") ;
+		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("socket")) ;
+		CompileDaemon daemon = new CompileDaemon() ;
+		Thread serving = start(daemon, address) ;
+
+		try (SocketChannel c = connect(address))
+		{
+			InputStream in = new BufferedInputStream(Channels.newInputStream(c)) ;
+			OutputStream out = Channels.newOutputStream(c) ;
+			int shared = IdentifierPool.shared().size() ;
+			for (int p = 0 ; p < programCount ; p++)
+			{
+				byte[] source = program(p).getBytes(StandardCharsets.UTF_8) ;
+				CompileDaemon.writeLine(out, "SOURCE program" + p + " " + source.length) ;
+				out.write(source) ;
+				String events = reply(in, "EVENTS") ;
+				String errors = reply(in, "ERRORS") ;
+				if (!errors.isEmpty() || !events.contains("x" + p + "x0"))
+				{
+					System.out.println("program " + p + " did not compile: " + errors) ;
+					failures++ ;
+				}
+				if (daemon.identifiersHeld() > identifiersPerProgram)
+				{
+					System.out.println("after program " + p + " the daemon holds " + daemon.identifiersHeld() +
+							" identifiers, more than one program has") ;
+					failures++ ;
+				}
+			}
+			if (IdentifierPool.shared().size() != shared)
+			{
+				System.out.println("the shared identifier pool grew from " + shared + " to " + IdentifierPool.shared().size()) ;
+				failures++ ;
+			}
+			CompileDaemon.writeLine(out, "SHUTDOWN") ;
+		}
+		serving.join(10000) ;
+		if (serving.isAlive())
+		{
+			System.out.println("the daemon did not shut down") ;
+			failures++ ;
+		}
+
+		int port ;
+		try (ServerSocket free = new ServerSocket(0))
+		{
+			port = free.getLocalPort() ;
+		}
+		InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), port) ;
+		CompileDaemon tcpDaemon = new CompileDaemon() ;
+		start(tcpDaemon, loopback) ;
+		for (String request : new String[] { "FILE /dev/null", "SHUTDOWN" })
+			try (SocketChannel c = connect(loopback))
+			{
+				InputStream in = new BufferedInputStream(Channels.newInputStream(c)) ;
+				OutputStream out = Channels.newOutputStream(c) ;
+				CompileDaemon.writeLine(out, request) ;
+				String refusal = CompileDaemon.readLine(in) ;
+				if ((refusal == null) || !refusal.startsWith("FAILED "))
+				{
+					System.out.println("over TCP the daemon answered " + request + " with " + refusal) ;
+					failures++ ;
+					continue ;
+				}
+				in.readNBytes(Integer.parseInt(refusal.substring(7))) ;
+				byte[] source = program(0).getBytes(StandardCharsets.UTF_8) ;
+				CompileDaemon.writeLine(out, "SOURCE program " + source.length) ;
+				out.write(source) ;
+				reply(in, "EVENTS") ;
+				reply(in, "ERRORS") ;
+			}
+			catch (IOException e)
+			{
+				System.out.println("over TCP the daemon stopped serving after " + request + ": " + e) ;
+				failures++ ;
+			}
+
+		UnixDomainSocketAddress idleAddress = UnixDomainSocketAddress.of(directory.resolve("idle")) ;
+		CompileDaemon idleDaemon = new CompileDaemon() ;
+		idleDaemon.setIdleLimit(1) ;
+		start(idleDaemon, idleAddress) ;
+		try (SocketChannel quiet = connect(idleAddress))
+		{
+			boolean[] served = new boolean[1] ;
+			Thread queued = new Thread(() ->
+			{
+				try (SocketChannel c = connect(idleAddress))
+				{
+					InputStream in = new BufferedInputStream(Channels.newInputStream(c)) ;
+					OutputStream out = Channels.newOutputStream(c) ;
+					byte[] source = program(0).getBytes(StandardCharsets.UTF_8) ;
+					CompileDaemon.writeLine(out, "SOURCE program " + source.length) ;
+					out.write(source) ;
+					reply(in, "EVENTS") ;
+					reply(in, "ERRORS") ;
+					served[0] = true ;
+				}
+				catch (Exception e)
+				{
+					System.out.println("the client queued behind a quiet one failed: " + e) ;
+				}
+			}) ;
+			queued.setDaemon(true) ;
+			queued.start() ;
+			queued.join(20000) ;
+			if (!served[0])
+			{
+				System.out.println("a client queued behind a quiet one was not served") ;
+				failures++ ;
+			}
+			else if (CompileDaemon.readLine(Channels.newInputStream(quiet)) != null)
+			{
+				System.out.println("the daemon sent a quiet client something") ;
+				failures++ ;
+			}
+		}
+		catch (IOException e)
+		{
+			// a reset rather than an end of stream also shows the connection was closed
+		}
+		Files.deleteIfExists(directory.resolve("idle")) ;
+		Files.deleteIfExists(directory.resolve("socket")) ;
+		Files.delete(directory) ;
+		System.out.println((failures == 0) ? "compile daemon tests passed" : failures + " compile daemon tests failed") ;
+		System.exit((failures == 0) ? 0 : 1) ;
+	} // end of main method
+
+	/** Makes a program whose identifiers no other program has.
+
+	  @param p The number of the program.
+	  @return its text.
+	 */
+	private static String program(int p)
+	{
+		StringBuilder b = new StringBuilder("begin\n") ;
+		for (int i = 0 ; i < identifiersPerProgram ; i++)
+			b.append((i == 0) ? "" : " ;\n").append('x').append(p).append('x').append(i).append(" := 1") ;
+		return b.append("\nend\n").toString() ;
+	} // end of method program
+
+	/** Runs a daemon with one thread on a thread of its own, which does not
+	  keep the JVM running.
+
+	  @param daemon The daemon.
+	  @param address Where it is to listen.
+	  @return the thread.
+	 */
+	private static Thread start(CompileDaemon daemon, SocketAddress address)
+	{
+		Thread serving = new Thread(() ->
+		{
+			try
+			{
+				daemon.serve(address, 1) ;
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace() ;
+			}
+		}) ;
+		serving.setDaemon(true) ;
+		serving.start() ;
+		return serving ;
+	} // end of method start
+
+	/** Connects to a daemon, waiting for it to start listening.
+
+	  @param address Where it listens.
+	  @return the connection.
+	 */
+	private static SocketChannel connect(SocketAddress address) throws Exception
+	{
+		for (int tries = 0 ; ; tries++)
+		{
+			SocketChannel c = (address instanceof UnixDomainSocketAddress)
+					? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open() ;
+			try
+			{
+				c.connect(address) ;
+				return c ;
+			}
+			catch (IOException e)
+			{
+				c.close() ;
+				if (tries == 200)
+					throw e ;
+				Thread.sleep(25) ;
+			}
+		}
+	} // end of method connect
+
+	/** Reads one part of a reply, a line naming it and the bytes it counts.
+
+	  @param in The connection.
+	  @param part What the line must start with.
+	  @return the bytes, as text.
+	 */
+	private static String reply(InputStream in, String part) throws IOException
+	{
+		String line = CompileDaemon.readLine(in) ;
+		if ((line == null) || !line.startsWith(part + " "))
+			throw new IOException("expected " + part + " but the daemon sent " + line) ;
+		byte[] bytes = in.readNBytes(Integer.parseInt(line.substring(part.length() + 1))) ;
+		return new String(bytes, StandardCharsets.UTF_8) ;
+	} // end of method reply
+} // end of class CompileDaemonTest
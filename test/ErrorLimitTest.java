@@ -0,0 +1,92 @@
+/**
+ *
+ * Error limit tests for 254 exercise.
+ *
+ * Parses programs with errors inside nested statements, with each analyser
+ * and with a range of error limits, and checks that no more errors are
+ * collected than the limit allows: an error that reaches the limit inside
+ * a nested statement must end the parse, not be recovered from again by
+ * the statement around it.  Exits with status 1 if any check fails.
+ *
+ **/
+
+import java.io.* ;
+import java.nio.file.Files ;
+import java.nio.file.Path ;
+
+public class ErrorLimitTest
+{
+	/** Programs, each with more than one error, the first found nested. */
+	private static final String[] programs =
+	{
+		"begin\nif a < b then\n while a loop x := := 1 end loop\nend if ;\ny := := 2 ;\nz := := 3\nend\n",
+		"begin\nwhile a < b loop\n if a then\n  do x := := 1 until a\n end if\nend loop ;\ny := := 2 ;\nz := := 3\nend\n",
+		"begin\nfor (i := 1 ; i < n ; i := i + 1) do\n while a loop x := := 1 end loop\nend loop ;\ny := := 2 ;\nz := := 3\nend\n"
+	} ;
+
+	private static final PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream()) ;
+
+	private static int failures ;
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("errorlimit") ;
+		try
+		{
+			for (int p = 0 ; p < programs.length ; p++)
+			{
+				Path file = directory.resolve("program" + p) ;
+				Files.write(file, programs[p].getBytes()) ;
+				int all = count(new SyntaxAnalyser(file.toString()), 100) ;
+				if (all < 2)
+				{
+					System.out.println(file + " has " + all + " errors, not several") ;
+					failures++ ;
+				}
+				for (int limit = 1 ; limit <= all + 1 ; limit++)
+				{
+					check(file + " recursive", new SyntaxAnalyser(file.toString()), limit, all) ;
+					check(file + " table", new TableSyntaxAnalyser(file.toString(), false), limit, all) ;
+				}
+				Files.delete(file) ;
+			}
+		}
+		finally
+		{
+			Files.delete(directory) ;
+		}
+		System.out.println((failures == 0) ? "error limit tests passed" : failures + " error limit tests failed") ;
+		System.exit((failures == 0) ? 0 : 1) ;
+	} // end of main method
+
+	/** Parses a program and counts the errors collected.
+
+	  @param syn The analyser, over the program.
+	  @param limit The error limit to parse with.
+	  @return the number of errors collected.
+	 */
+	private static int count(AbstractSyntaxAnalyser syn, int limit) throws IOException
+	{
+		syn.setErrorRecovery(limit) ;
+		syn.parse(nowhere, nowhere) ;
+		return syn.getDiagnostics().size() ;
+	} // end of method count
+
+	/** Parses a program and checks that it collects as many errors as the
+	  limit allows, and no more.
+
+	  @param name What to call the check if it fails.
+	  @param syn The analyser, over the program.
+	  @param limit The error limit to parse with.
+	  @param all How many errors the program has.
+	 */
+	private static void check(String name, AbstractSyntaxAnalyser syn, int limit, int all) throws IOException
+	{
+		int expected = Math.min(limit, all), found = count(syn, limit) ;
+		if (found != expected)
+		{
+			System.out.println(name + " with limit " + limit + ": " + found + " errors, expected " + expected) ;
+			failures++ ;
+		}
+	} // end of method check
+} // end of class ErrorLimitTest